@@ -20,6 +20,14 @@ public interface DecompressedSzsFile extends Closeable {
         return getRoot().resolve(path);
     }
 
+    /**
+     * Resolves {@code parts} below {@code base}, which must belong to this file. Files with a path index answer this
+     * without walking the tree.
+     */
+    default TreeNode getNode(DirectoryNode base, String... parts) {
+        return base.resolveParts(parts);
+    }
+
     interface TreeNode {
         FileTime NO_TIME = FileTime.fromMillis(0L);
         DirectoryNode[] NO_PARENTS = new DirectoryNode[0];
@@ -32,6 +40,13 @@ public interface DecompressedSzsFile extends Closeable {
             return this == getParent();
         }
 
+        /**
+         * @return The number of directories above this node, which is {@code getParents().length}
+         */
+        default int getDepth() {
+            return getParents().length;
+        }
+
         default DirectoryNode[] getParents() {
             DirectoryNode last = getParent();
             if (this == last) {
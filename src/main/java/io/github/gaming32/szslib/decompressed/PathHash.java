@@ -0,0 +1,46 @@
+package io.github.gaming32.szslib.decompressed;
+
+/**
+ * 64-bit FNV-1a hashes of full archive paths, such as {@code "a/b/c.bfres"}. A path's hash can be computed from its
+ * parent's with {@link #child}, so hashes for a whole tree are built in one pass and lookups hash the query in place.
+ */
+public final class PathHash {
+    /**
+     * The hash of the root, whose path is empty
+     */
+    public static final long ROOT = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    private PathHash() {
+    }
+
+    public static long update(long hash, int c) {
+        return (hash ^ c) * PRIME;
+    }
+
+    public static long append(long hash, CharSequence s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            hash = update(hash, s.charAt(i));
+        }
+        return hash;
+    }
+
+    public static long hash(CharSequence path) {
+        return append(ROOT, path, 0, path.length());
+    }
+
+    /**
+     * @return The hash of the child called {@code name} of the directory whose hash is {@code parent}
+     */
+    public static long child(long parent, CharSequence name) {
+        return append(parent == ROOT ? ROOT : update(parent, '/'), name, 0, name.length());
+    }
+
+    public static long child(long parent, byte[] name, int start, int end) {
+        long hash = parent == ROOT ? ROOT : update(parent, '/');
+        for (int i = start; i < end; i++) {
+            hash = update(hash, name[i] & 0xff);
+        }
+        return hash;
+    }
+}
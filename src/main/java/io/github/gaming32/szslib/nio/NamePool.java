@@ -0,0 +1,68 @@
+package io.github.gaming32.szslib.nio;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Pools the names of archive entries, so that paths repeating them share strings. Only names the archive itself has
+ * decoded are added, as paths resolve to its entries or are listed from them, so components of paths that don't exist
+ * never take up room. Nothing is read from the archive up front, so creating the first path stays cheap. The table has
+ * a fixed size, and a name whose probe run is full just isn't pooled.
+ */
+final class NamePool {
+    private static final int CAPACITY = 1 << 12;
+    private static final int MAX_PROBES = 8;
+
+    private final AtomicReferenceArray<String> table = new AtomicReferenceArray<>(CAPACITY);
+
+    /**
+     * Looks up a range of a string without copying it, so components that are already pooled never allocate.
+     *
+     * @return The pooled instance equal to {@code s.substring(start, end)}, or that substring if there isn't one
+     */
+    String lookup(String s, int start, int end) {
+        final int length = end - start;
+        int slot = slot(hash(s, start, end));
+        for (int probe = 0; probe < MAX_PROBES; probe++, slot = (slot + 1) & (CAPACITY - 1)) {
+            final String candidate = table.get(slot);
+            if (candidate == null) break;
+            if (candidate.length() == length && candidate.regionMatches(0, s, start, length)) {
+                return candidate;
+            }
+        }
+        return s.substring(start, end);
+    }
+
+    /**
+     * Pools {@code name}, which should be a name decoded by the archive, if it isn't already and there's room.
+     */
+    void add(String name) {
+        int slot = slot(name.hashCode());
+        for (int probe = 0; probe < MAX_PROBES; probe++, slot = (slot + 1) & (CAPACITY - 1)) {
+            final String candidate = table.get(slot);
+            if (candidate == null) {
+                if (table.compareAndSet(slot, null, name)) {
+                    return;
+                }
+                // Another thread filled the slot first, which might have been with this name
+                if (name.equals(table.get(slot))) {
+                    return;
+                }
+            } else if (candidate.equals(name)) {
+                return;
+            }
+        }
+    }
+
+    // Same as String.hashCode() of the range
+    private static int hash(String s, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + s.charAt(i);
+        }
+        return hash;
+    }
+
+    private static int slot(int hash) {
+        return (hash ^ hash >>> 16) & (CAPACITY - 1);
+    }
+}
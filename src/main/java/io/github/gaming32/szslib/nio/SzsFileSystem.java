@@ -2,13 +2,17 @@ package io.github.gaming32.szslib.nio;
 
 import io.github.gaming32.szslib.SzsDetector;
 import io.github.gaming32.szslib.decompressed.DecompressedSzsFile;
+import io.github.gaming32.szslib.sarc.SARCFile;
 import io.github.gaming32.szslib.u8.U8File;
-import io.github.gaming32.szslib.yaz0.Yaz0InputStream;
+import io.github.gaming32.szslib.yaz0.Yaz0Decoder;
+import io.github.gaming32.szslib.yaz0.Yaz0LazyChannel;
+import io.github.gaming32.szslib.yaz0.Yaz0ReadableByteChannel;
 import org.apache.commons.compress.utils.IOUtils;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
@@ -46,13 +50,15 @@ public class SzsFileSystem extends FileSystem {
     private final int toPathChop;
 
     private final SzsPath rootPath = new SzsPath(this, SzsPath.EMPTY_PATH, true);
+    private final NamePool namePool = new NamePool();
 
     SzsFileSystem(SzsFileSystemProvider provider, Path path, Map<String, ?> env) throws IOException {
         this.provider = provider;
         this.path = path;
 
-        try (final InputStream is = new BufferedInputStream(Files.newInputStream(path))) {
-            this.file = openFile(is);
+        this.file = openFile(path);
+        if (file instanceof U8File u8) {
+            u8.buildPathIndex();
         }
 
         DecompressedSzsFile.DirectoryNode root = file.getRoot();
@@ -60,29 +66,86 @@ public class SzsFileSystem extends FileSystem {
             root = dir;
         }
         this.root = root;
-        toPathChop = root.getParents().length + 1;
+        toPathChop = root.getDepth() + 1;
     }
 
-    private static DecompressedSzsFile openFile(InputStream is) throws IOException {
-        is.mark(4);
-        final SzsDetector.Format format = SzsDetector.getFormat(is);
-        is.reset();
+    private static DecompressedSzsFile openFile(Path path) throws IOException {
+        final MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (UnsupportedOperationException e) {
+            // Not backed by the default file system, so it can't be mapped
+            return openFile(Files.newByteChannel(path, StandardOpenOption.READ));
+        }
+        return openFile(mapped);
+    }
+
+    private static DecompressedSzsFile openFile(ByteBuffer buffer) throws IOException {
+        final SzsDetector.Format format = buffer.remaining() >= 4 ? SzsDetector.getFormat(buffer.duplicate()) : null;
         if (format == null) {
-            final byte[] magic = new byte[4];
-            IOUtils.readFully(is, magic);
+            final byte[] magic = new byte[Math.min(4, buffer.remaining())];
+            buffer.get(buffer.position(), magic);
             throw new IOException("Unknown SZS format: " + new String(magic, StandardCharsets.ISO_8859_1));
         }
         return switch (format) {
-            case Yaz0 -> {
-                try (InputStream innerStream = new BufferedInputStream(new Yaz0InputStream(is))) {
-                    yield openFile(innerStream);
-                }
-            }
-            case U8 -> U8File.fromInputStream(is);
-            default -> throw new IOException("Unsupported SZS format: " + format);
+            case Yaz0 -> openYaz0(buffer);
+            case U8 -> U8File.fromByteBuffer(buffer);
+            case SARC -> SARCFile.open(buffer);
         };
     }
 
+    /**
+     * Yaz0-compressed U8 and SARC archives are decoded on demand, so opening one only decodes its header and tables.
+     */
+    private static DecompressedSzsFile openYaz0(ByteBuffer buffer) throws IOException {
+        final Yaz0LazyChannel channel = Yaz0LazyChannel.open(buffer);
+        try {
+            final SzsDetector.Format format = channel.size() >= 4 ? SzsDetector.getFormat(channel) : null;
+            if (format == SzsDetector.Format.U8) {
+                return U8File.fromChannel(channel);
+            }
+            if (format == SzsDetector.Format.SARC) {
+                return SARCFile.open(channel);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        channel.close();
+        return openFile(Yaz0Decoder.decode(buffer, ByteBuffer::allocate));
+    }
+
+    /**
+     * Takes ownership of {@code channel}. U8 and SARC archives are read from it in place, and Yaz0 files are decoded
+     * through a {@link Yaz0ReadableByteChannel} straight into a buffer of their uncompressed size.
+     */
+    private static DecompressedSzsFile openFile(SeekableByteChannel channel) throws IOException {
+        final SzsDetector.Format format;
+        try {
+            format = channel.size() >= 4 ? SzsDetector.getFormat(channel) : null;
+            channel.position(0);
+            if (format == null) {
+                final ByteBuffer magic = ByteBuffer.allocate((int)Math.min(4, channel.size()));
+                IOUtils.readFully(channel, magic);
+                throw new IOException("Unknown SZS format: " + new String(magic.array(), StandardCharsets.ISO_8859_1));
+            }
+            if (format == SzsDetector.Format.U8) {
+                return U8File.fromChannel(channel);
+            }
+            if (format == SzsDetector.Format.SARC) {
+                return SARCFile.open(channel);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        try (Yaz0ReadableByteChannel yaz0 = Yaz0ReadableByteChannel.open(channel)) {
+            final ByteBuffer buffer = ByteBuffer.allocate(yaz0.getUncompressedSize());
+            IOUtils.readFully(yaz0, buffer);
+            return openFile(buffer.flip());
+        }
+    }
+
     @Override
     public SzsFileSystemProvider provider() {
         return provider;
@@ -141,6 +204,13 @@ public class SzsFileSystem extends FileSystem {
         return Collections.singleton("basic");
     }
 
+    /**
+     * Returns a path component, shared with the archive's own name if that's been pooled.
+     */
+    String lookupName(String s, int start, int end) {
+        return namePool.lookup(s, start, end);
+    }
+
     @Override
     public Path getPath(String first, String... more) {
         if (more.length == 0) {
@@ -191,23 +261,35 @@ public class SzsFileSystem extends FileSystem {
     }
 
     private DecompressedSzsFile.TreeNode getNode(SzsPath path) {
-        if (root.isRoot()) {
-            final String pathStr = path.toString();
-            try {
-                return file.getNode(path.isAbsolute() ? pathStr.substring(1) : pathStr);
-            } catch (IllegalArgumentException e) {
-                return null;
-            }
+        String[] parts = path.getParts();
+        if (!isNormal(parts)) {
+            parts = path.normalize().getParts();
         }
-        final String[] parts = path.normalize().getParts();
         if (parts.length == 0 || (parts.length == 1 && parts[0].isEmpty())) {
             return root;
         }
+        final DecompressedSzsFile.TreeNode node;
         try {
-            return root.resolveParts(parts);
+            node = file.getNode(root, parts);
         } catch (IllegalArgumentException e) {
             return null;
         }
+        // The path exists, so its names are worth pooling for the paths that repeat them
+        DecompressedSzsFile.TreeNode current = node;
+        while (current != null && current != root) {
+            namePool.add(current.getName());
+            current = current.getParent();
+        }
+        return node;
+    }
+
+    private static boolean isNormal(String[] parts) {
+        for (final String part : parts) {
+            if (part.isEmpty() || part.equals(".") || part.equals("..")) {
+                return false;
+            }
+        }
+        return true;
     }
 
     private DecompressedSzsFile.FileNode getFileForReading(
@@ -241,13 +323,14 @@ public class SzsFileSystem extends FileSystem {
         if (node == root) {
             return rootPath;
         }
-        final DecompressedSzsFile.DirectoryNode[] parents = node.getParents();
-        final List<String> result = new ArrayList<>();
-        for (int i = toPathChop; i < parents.length; i++) {
-            result.add(parents[i].getName());
+        final String[] parts = new String[node.getDepth() - toPathChop + 1];
+        DecompressedSzsFile.TreeNode current = node;
+        for (int i = parts.length - 1; i >= 0; i--) {
+            parts[i] = current.getName();
+            namePool.add(parts[i]);
+            current = current.getParent();
         }
-        result.add(node.getName());
-        return new SzsPath(this, result.toArray(String[]::new), true);
+        return new SzsPath(this, parts, true);
     }
 
     public SeekableByteChannel newByteChannel(
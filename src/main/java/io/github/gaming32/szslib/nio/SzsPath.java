@@ -21,6 +21,7 @@ public class SzsPath implements Path {
     private final String[] path;
     private final boolean absolute;
     private SzsPath normalized;
+    private int hash;
 
     SzsPath(SzsFileSystem fileSystem, String[] path, boolean absolute) {
         this.fileSystem = fileSystem;
@@ -32,21 +33,44 @@ public class SzsPath implements Path {
         this(fileSystem, new String[] {singlePart}, absolute);
     }
 
+    /**
+     * Parses {@code path} in a single pass. Repeated separators are collapsed, and components naming entries that have
+     * already been found share the archive's strings. If there are no {@code .} or {@code ..} components, the path is
+     * already its own {@link #normalize() normal form}.
+     */
     SzsPath(SzsFileSystem fileSystem, String path) {
         this.fileSystem = fileSystem;
-        final String[] parts = path.split("/+");
-        if (parts.length == 0) {
-            this.path = EMPTY_PATH;
-            this.absolute = true;
-        } else if (parts.length == 1 && parts[0].isEmpty()) {
-            this.path = parts;
-            this.absolute = false;
-        } else if (parts[0].isEmpty()) {
-            this.path = Arrays.copyOfRange(parts, 1, parts.length);
-            this.absolute = true;
+        final int length = path.length();
+        String[] parts = EMPTY_PATH;
+        int count = 0;
+        boolean special = false;
+        int start = 0;
+        while (start < length) {
+            if (path.charAt(start) == '/') {
+                start++;
+                continue;
+            }
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (path.charAt(start) == '.' && (end - start == 1 || end - start == 2 && path.charAt(start + 1) == '.')) {
+                special = true;
+            }
+            if (count == parts.length) {
+                parts = Arrays.copyOf(parts, Math.max(count * 2, 4));
+            }
+            parts[count++] = fileSystem.lookupName(path, start, end);
+            start = end;
+        }
+        this.absolute = length > 0 && path.charAt(0) == '/';
+        if (count == 0) {
+            this.path = absolute ? EMPTY_PATH : new String[] {""};
         } else {
-            this.path = parts;
-            this.absolute = false;
+            this.path = count == parts.length ? parts : Arrays.copyOf(parts, count);
+        }
+        if (!special) {
+            normalized = this;
         }
     }
 
@@ -175,27 +199,24 @@ public class SzsPath implements Path {
             return normalized = this;
         }
 
-        final List<String> result = new ArrayList<>(path.length);
-        for (int i = 0; i < path.length; i++) {
-            final String part = path[i];
+        final String[] result = new String[path.length];
+        int size = 0;
+        for (final String part : path) {
             if (part.equals(".")) {
                 continue; // Simply skip
             }
-            if (part.equals("..") && i > 0) {
-                final int lastIndex = result.size() - 1;
-                if (!result.get(lastIndex).equals("..")) {
-                    result.remove(lastIndex);
-                } else {
-                    result.add("..");
-                }
+            if (part.equals("..") && size > 0 && !result[size - 1].equals("..")) {
+                size--;
                 continue;
             }
-            result.add(part);
+            result[size++] = part;
         }
-        if (result.size() == path.length) {
+        if (size == path.length) {
             return normalized = this;
         }
-        return normalized = new SzsPath(fileSystem, result.toArray(String[]::new), absolute);
+        final SzsPath resultPath = new SzsPath(fileSystem, Arrays.copyOf(result, size), absolute);
+        resultPath.normalized = resultPath;
+        return normalized = resultPath;
     }
 
     @Override
@@ -206,7 +227,7 @@ public class SzsPath implements Path {
         if ((path.length == 1 && path[0].isEmpty()) || o.absolute) {
             return o;
         }
-        if (o.path.length == 1 && path[0].isEmpty()) {
+        if (o.path.length == 1 && o.path[0].isEmpty()) {
             return this;
         }
         final String[] parts = new String[path.length + o.path.length];
@@ -337,6 +358,28 @@ public class SzsPath implements Path {
         return Arrays.compare(path, o.path);
     }
 
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        return obj instanceof SzsPath o &&
+            o.fileSystem == fileSystem &&
+            o.absolute == absolute &&
+            hashCode() == o.hashCode() &&
+            Arrays.equals(path, o.path);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = hash;
+        if (result == 0) {
+            result = 31 * Arrays.hashCode(path) + Boolean.hashCode(absolute);
+            hash = result;
+        }
+        return result;
+    }
+
     @Override
     public String toString() {
         return (absolute ? "/" : "") + String.join("/", path);
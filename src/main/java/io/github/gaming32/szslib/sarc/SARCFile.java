@@ -1,138 +1,455 @@
 package io.github.gaming32.szslib.sarc;
 
-import io.github.gaming32.szslib.SzsDetector;
+import io.github.gaming32.szslib.decompressed.DecompressedSzsFile;
+import io.github.gaming32.szslib.util.ByteBufferChannel;
+import io.github.gaming32.szslib.util.PositionalReader;
+import io.github.gaming32.szslib.yaz0.Yaz0LazyChannel;
+import org.apache.commons.compress.utils.IOUtils;
 import org.jetbrains.annotations.Nullable;
 
-import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 // https://mk8.tockdom.com/wiki/SARC_(File_Format)
-public class SARCFile {
-    private static final int SFAT_MAGIC = 0x53464154;
-    private static final int SFNT_MAGIC = 0x53464E54;
-
-    private final Map<String, SARCNode> nodes;
-    private final byte[] fileData;
-
-    private SARCFile(InputStream is) throws IOException {
-        if (readInt(is, true) != SzsDetector.SARC_MAGIC) {
-            throw new IOException("Invalid SARC magic");
-        }
-        is.skipNBytes(2);
-        final int bom = readShort(is, true);
-        final boolean bigEndian = switch (bom) {
-            case 0xFEFF -> true;
-            case 0xFFFE -> false;
-            default -> throw new IOException("Invalid SARC BOM: 0x" + Integer.toHexString(bom));
-        };
-        final int fileSize = readInt(is, bigEndian);
-        final int beginningOfData = readInt(is, bigEndian);
-        final int version = readShort(is, bigEndian);
-        if (version != 0x100) {
-            throw new IOException("Unknown SARC version: " + version);
-        }
-        is.skipNBytes(2);
-
-        if (readInt(is, true) != SFAT_MAGIC) {
-            throw new IOException("Invalid SFAT magic");
-        }
-        is.skipNBytes(2);
-        final int nodeCount = readShort(is, bigEndian);
-        final int hashKey = readInt(is, bigEndian);
-
-        record PartialNode(int hash, int nameOffset, int beginData, int endData) {
-        }
-        final PartialNode[] partialNodes = new PartialNode[nodeCount];
-        int maxEndData = 0;
-        for (int i = 0; i < nodeCount; i++) {
-            final int hash = readInt(is, bigEndian);
-            final int attrs = readInt(is, bigEndian);
-            if ((attrs & 0x01000000) == 0) {
-                // Unknown filename. Skip.
-                is.skipNBytes(8);
-                continue;
+
+/**
+ * A SARC archive. Opening one only reads its tables onto the heap: entries are looked up by name or hash with a binary
+ * search over the SFAT, and the directory tree is derived from the {@code /}-separated names the first time it's
+ * needed.
+ *
+ * @apiNote Thread-safety: a {@link SARCFile} instance is thread-safe, but any archived streams opened for reading using
+ * {@link FileNode#openChannel} or {@link FileNode#openInputStream} are not. Archives opened from a buffer or a
+ * mappable {@link Path} are read from slices of their buffer, and archives over a {@link FileChannel} or
+ * {@link Yaz0LazyChannel} use positional reads, so neither needs a lock. Only other channels are read under a lock.
+ */
+public class SARCFile implements DecompressedSzsFile {
+    private volatile SeekableByteChannel channel;
+    private ByteBuffer data;
+    private final PositionalReader reader;
+    private final SARCTables tables;
+    private volatile DirectoryNode root;
+
+    private SARCFile(SeekableByteChannel channel) throws IOException {
+        this.channel = channel;
+        reader = PositionalReader.of(channel);
+
+        try {
+            final long archiveSize = channel.size();
+            final ByteBuffer header = ByteBuffer.allocate(SARCTables.FIXED_SIZE);
+            if (archiveSize < header.capacity()) {
+                throw new EOFException("SARC header truncated");
             }
-            final int beginData = readInt(is, bigEndian);
-            final int endData = readInt(is, bigEndian);
-            partialNodes[i] = new PartialNode(hash, (attrs & 0xFFFF) << 2, beginData, endData);
-            maxEndData = Math.max(maxEndData, endData);
-        }
-
-        if (readInt(is, true) != SFNT_MAGIC) {
-            throw new IOException("Invalid SFNT magic");
-        }
-        is.skipNBytes(4);
-
-        nodes = new LinkedHashMap<>(nodeCount);
-        final byte[] nameTable = is.readNBytes(beginningOfData - 40 - 16 * nodeCount);
-        final int[] nameEndOffset = {0};
-        for (final PartialNode node : partialNodes) {
-            if (node == null) continue;
-            final int readHash = hashFileName(nameTable, node.nameOffset, hashKey, nameEndOffset);
-            final String filename = new String(
-                nameTable,
-                node.nameOffset,
-                nameEndOffset[0] - node.nameOffset,
-                StandardCharsets.ISO_8859_1
-            );
-            if (readHash != node.hash) {
-                throw new IOException("Hash of filename " + filename + " does not match header: " + readHash + " != " + node.hash);
+            channel.position(0);
+            IOUtils.readFully(channel, header);
+            // The SFAT entries, the SFNT header, and the name table, read in one go
+            tables = SARCTables.read(header, archiveSize, size -> {
+                final ByteBuffer rest = ByteBuffer.allocate(size);
+                IOUtils.readFully(channel, rest);
+                return rest.flip();
+            });
+            if (channel instanceof ByteBufferChannel bufferChannel) {
+                data = bufferChannel.getBuffer().slice(tables.dataStart, tables.fileSize - tables.dataStart);
             }
-            nodes.put(filename, new SARCNode(node.beginData, node.endData));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
         }
+    }
 
-        fileData = is.readNBytes(maxEndData);
-        if (fileData.length < maxEndData) {
-            throw new IOException("Input too short to fill " + maxEndData + " bytes of file data");
-        }
+    /**
+     * Reads the tables of the archive, after which entries are read from {@code channel} with positional reads. A
+     * {@link FileChannel} or {@link Yaz0LazyChannel} is read without locking. The channel is closed when the archive
+     * is, or if it's rejected.
+     */
+    public static SARCFile open(SeekableByteChannel channel) throws IOException {
+        return new SARCFile(channel);
+    }
 
-        is.skipNBytes(fileSize - 40 - 16L * nodeCount - maxEndData - beginningOfData);
+    /**
+     * Reads the SARC archive starting at {@code buffer.position()} in place. The buffer isn't copied, so it must not be
+     * modified while the {@link SARCFile} is open.
+     */
+    public static SARCFile open(ByteBuffer buffer) throws IOException {
+        return new SARCFile(new ByteBufferChannel(buffer));
     }
 
-    public static SARCFile read(InputStream is) throws IOException {
-        return new SARCFile(is);
+    /**
+     * Maps the archive at {@code path} into memory once, so entries are read from slices of the mapping. Paths that
+     * can't be mapped are read with positional reads instead.
+     */
+    public static SARCFile open(Path path) throws IOException {
+        final MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (UnsupportedOperationException e) {
+            // Not backed by the default file system, so it can't be mapped
+            return open(Files.newByteChannel(path, StandardOpenOption.READ));
+        }
+        return open(mapped);
     }
 
-    private static int readInt(InputStream is, boolean bigEndian) throws IOException {
-        final int value = is.read() | (is.read() << 8) | (is.read() << 16) | (is.read() << 24);
-        return bigEndian ? Integer.reverseBytes(value) : value;
+    /**
+     * Reads exactly one SARC archive from {@code is}, leaving the stream positioned after it.
+     */
+    public static SARCFile read(InputStream is) throws IOException {
+        final byte[] header = is.readNBytes(SARCTables.HEADER_SIZE);
+        if (header.length < SARCTables.HEADER_SIZE) {
+            throw new EOFException("SARC header truncated");
+        }
+        final ByteBuffer headerBuf = ByteBuffer.wrap(header);
+        headerBuf.order(SARCTables.getByteOrder(headerBuf.getShort(6)));
+        final int fileSize = headerBuf.getInt(0x08);
+        if (fileSize < SARCTables.FIXED_SIZE) {
+            throw new IOException("Invalid SARC file size: " + fileSize);
+        }
+        final byte[] whole = new byte[fileSize];
+        System.arraycopy(header, 0, whole, 0, SARCTables.HEADER_SIZE);
+        if (is.readNBytes(whole, SARCTables.HEADER_SIZE, fileSize - SARCTables.HEADER_SIZE) != fileSize - SARCTables.HEADER_SIZE) {
+            throw new EOFException("SARC file truncated");
+        }
+        return open(ByteBuffer.wrap(whole));
     }
 
-    private static int readShort(InputStream is, boolean bigEndian) throws IOException {
-        final int value = is.read() | (is.read() << 8);
-        return bigEndian ? Short.reverseBytes((short)value) & 0xffff : value;
+    /**
+     * Streams the archive from {@code in} in a single pass, visiting entries in data order with only the tables in
+     * memory. See {@link SARCStreamReader}.
+     *
+     * @return {@code false} if the visitor stopped early with {@link java.nio.file.FileVisitResult#TERMINATE}
+     */
+    public static boolean stream(InputStream in, SARCStreamReader.Visitor visitor) throws IOException {
+        return SARCStreamReader.read(in, visitor);
     }
 
-    private static int hashFileName(byte[] nameTable, int start, int key, int[] outOffset) {
+    /**
+     * Computes the SFAT hash of {@code name} with {@code key}. Names are ISO-8859-1.
+     */
+    public static int hashFileName(CharSequence name, int key) {
         int result = 0;
-        int i;
-        for (i = start; i < nameTable.length; i++) {
-            final int b = nameTable[i] & 0xff;
-            if (b == 0) break;
-            result = result * key + b;
+        for (int i = 0; i < name.length(); i++) {
+            result = result * key + (name.charAt(i) & 0xff);
         }
-        outOffset[0] = i;
         return result;
     }
 
+    public int getHashKey() {
+        return tables.hashKey;
+    }
+
+    /**
+     * @return The number of SFAT entries, including ones without a stored name
+     */
+    public int getEntryCount() {
+        return tables.size();
+    }
+
+    public Entry getEntryAt(int index) {
+        Objects.checkIndex(index, tables.size());
+        return new Entry(index);
+    }
+
+    /**
+     * Looks up {@code name} by its hash without decoding any names. Only names with a matching hash are compared.
+     */
+    @Nullable
+    public Entry getEntry(String name) {
+        final int index = tables.find(name);
+        return index >= 0 ? new Entry(index) : null;
+    }
+
+    /**
+     * Looks up the first entry with {@code hash}. This is the only way to reach entries without a stored name.
+     */
+    @Nullable
+    public Entry getEntryByHash(int hash) {
+        final int index = tables.findHash(hash, 0);
+        return index >= 0 ? new Entry(index) : null;
+    }
+
+    private ByteBuffer asByteBuffer(int index) throws IOException {
+        final ByteBuffer data = this.data;
+        final int size = tables.dataSize(index);
+        if (data != null) {
+            return data.slice(tables.beginData[index], size);
+        }
+        final ByteBuffer result = ByteBuffer.allocate(size);
+        try (SeekableByteChannel in = openChannel(index)) {
+            IOUtils.readFully(in, result);
+        }
+        return result.flip().asReadOnlyBuffer();
+    }
+
+    private SeekableByteChannel openChannel(int index) {
+        if (channel == null) {
+            throw new IllegalStateException("SARCFile closed");
+        }
+        final ByteBuffer data = this.data;
+        final int size = tables.dataSize(index);
+        if (data != null) {
+            return new ByteBufferChannel(data.slice(tables.beginData[index], size));
+        }
+        return reader.openRange((long)tables.dataStart + tables.beginData[index], size, () -> channel != null);
+    }
+
     @Nullable
     public InputStream getInputStream(String filename) {
-        final SARCNode node = nodes.get(filename);
-        if (node == null) {
+        final Entry entry = getEntry(filename);
+        if (entry == null) {
             return null;
         }
-        return new ByteArrayInputStream(fileData, node.beginData, node.endData - node.beginData);
+        return entry.openInputStream();
     }
 
+    /**
+     * @return The stored names in SFAT order. These are decoded on each call.
+     */
     public Set<String> listFiles() {
-        return nodes.keySet();
+        final Set<String> result = new LinkedHashSet<>();
+        for (int i = 0; i < tables.size(); i++) {
+            final String name = tables.readName(i);
+            if (name != null) {
+                result.add(name);
+            }
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    /**
+     * The tree is built from the stored names on first use. Entries without a name, and names that would place a
+     * file where a directory is (or the other way around), are left out of it, but can still be reached with
+     * {@link #getEntry} and {@link #getEntryByHash}.
+     */
+    @Override
+    public DirectoryNode getRoot() {
+        if (channel == null) {
+            throw new IllegalStateException("SARCFile closed");
+        }
+        DirectoryNode result = root;
+        if (result == null) {
+            synchronized (this) {
+                result = root;
+                if (result == null) {
+                    result = new DirectoryNode("", null);
+                    for (int i = 0; i < tables.size(); i++) {
+                        final String name = tables.readName(i);
+                        if (name != null) {
+                            result.addFile(name, i);
+                        }
+                    }
+                    root = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel != null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        final SeekableByteChannel channel = this.channel;
+        if (channel != null) {
+            this.channel = null;
+            data = null;
+            channel.close();
+        }
+    }
+
+    /**
+     * An SFAT entry, which may not have a stored name.
+     */
+    public final class Entry {
+        private final int index;
+
+        private Entry(int index) {
+            this.index = index;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public int getHash() {
+            return tables.hashes[index];
+        }
+
+        /**
+         * @return The stored name, or {@code null} if this entry only has a hash
+         */
+        @Nullable
+        public String getName() {
+            return tables.readName(index);
+        }
+
+        public int getSize() {
+            return tables.dataSize(index);
+        }
+
+        /**
+         * Returns the content of this entry as a read-only buffer. For archives backed by a buffer, this is a slice of
+         * it and nothing is copied. Otherwise, the content is read into a new buffer.
+         */
+        public ByteBuffer asByteBuffer() throws IOException {
+            return SARCFile.this.asByteBuffer(index);
+        }
+
+        public SeekableByteChannel openChannel() {
+            return SARCFile.this.openChannel(index);
+        }
+
+        public InputStream openInputStream() {
+            return Channels.newInputStream(openChannel());
+        }
+
+        @Override
+        public String toString() {
+            final String name = getName();
+            return "Entry[" + (name != null ? name : String.format("0x%08x", getHash())) + "]";
+        }
     }
 
-    private record SARCNode(int beginData, int endData) {
+
+    public abstract sealed class TreeNode implements DecompressedSzsFile.TreeNode permits DirectoryNode, FileNode {
+        private final String name;
+        private final DirectoryNode parent;
+        // Both are set as the tree is built, so paths never have to walk the parents
+        private final String fullPath;
+        private final int depth;
+
+        private TreeNode(String name, DirectoryNode parent) {
+            this.name = name;
+            this.parent = parent;
+            if (parent == null) {
+                fullPath = name;
+                depth = 0;
+            } else {
+                fullPath = parent.getFullPath() + '/' + name;
+                depth = parent.getDepth() + 1;
+            }
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        // This will return itself if it's the root
+        @Override
+        public DirectoryNode getParent() {
+            return parent != null ? parent : (DirectoryNode)this;
+        }
+
+        @Override
+        public int getDepth() {
+            return depth;
+        }
+
+        @Override
+        public DirectoryNode[] getParents() {
+            final DirectoryNode[] result = new DirectoryNode[depth];
+            DirectoryNode current = parent;
+            for (int i = depth - 1; i >= 0; i--) {
+                result[i] = current;
+                current = current.getParent();
+            }
+            return result;
+        }
+
+        @Override
+        public String getFullPath() {
+            return fullPath;
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "[" + getFullPath() + "]";
+        }
+    }
+
+    public final class DirectoryNode extends TreeNode implements DecompressedSzsFile.DirectoryNode {
+        private final Map<String, TreeNode> children = new LinkedHashMap<>();
+
+        private DirectoryNode(String name, DirectoryNode parent) {
+            super(name, parent);
+        }
+
+        private void addFile(String path, int index) {
+            DirectoryNode dir = this;
+            int start = 0;
+            int end;
+            while ((end = path.indexOf('/', start)) >= 0) {
+                if (end > start) {
+                    final String part = path.substring(start, end);
+                    final DirectoryNode parent = dir;
+                    if (!(dir.children.computeIfAbsent(part, k -> new DirectoryNode(k, parent)) instanceof DirectoryNode sub)) {
+                        return;
+                    }
+                    dir = sub;
+                }
+                start = end + 1;
+            }
+            final String name = path.substring(start);
+            if (!name.isEmpty()) {
+                dir.children.putIfAbsent(name, new FileNode(name, dir, index));
+            }
+        }
+
+        @Override
+        public Map<String, TreeNode> getChildren() {
+            return Collections.unmodifiableMap(children);
+        }
+
+        @Override
+        public TreeNode getChild(String name) {
+            return children.get(name);
+        }
+    }
+
+    public final class FileNode extends TreeNode implements DecompressedSzsFile.FileNode {
+        private final int index;
+
+        private FileNode(String name, DirectoryNode parent, int index) {
+            super(name, parent);
+            this.index = index;
+        }
+
+        public Entry getEntry() {
+            return new Entry(index);
+        }
+
+        @Override
+        public int getSize() {
+            return tables.dataSize(index);
+        }
+
+        /**
+         * Returns the content of this entry as a read-only buffer. For archives backed by a buffer, this is a slice of
+         * it and nothing is copied. Otherwise, the content is read into a new buffer.
+         */
+        public ByteBuffer asByteBuffer() throws IOException {
+            return SARCFile.this.asByteBuffer(index);
+        }
+
+        @Override
+        public SeekableByteChannel openChannel() {
+            return SARCFile.this.openChannel(index);
+        }
     }
 }
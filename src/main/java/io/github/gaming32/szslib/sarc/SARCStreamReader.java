@@ -0,0 +1,91 @@
+package io.github.gaming32.szslib.sarc;
+
+import io.github.gaming32.szslib.util.EntryStreamer;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.FileVisitResult;
+import java.util.Arrays;
+
+/**
+ * Reads SARC archives from a stream that can't seek, in a single pass. The header, SFAT, and SFNT are read first, then
+ * each entry is handed to a {@link Visitor} in the order its data appears in the archive. Only the tables are held in
+ * memory, so this works on the output of a {@link io.github.gaming32.szslib.yaz0.Yaz0StreamingInputStream
+ * Yaz0StreamingInputStream} without ever holding the whole archive.
+ * <p>
+ * Entries sharing the exact same data are all visited. The first one reads it straight from the stream, and it's
+ * buffered as it goes so that it can be replayed to the others. Only data up to {@link #MAX_REPLAY_SIZE} is buffered;
+ * for larger shared data, reading from the later entries' streams throws an {@link IOException}. Entries whose data
+ * partially overlaps an earlier entry's can't be streamed, and cause an {@link IOException}.
+ *
+ * @see SARCFile#stream
+ */
+public final class SARCStreamReader {
+    /**
+     * The largest shared data that's buffered for replay
+     */
+    public static final int MAX_REPLAY_SIZE = EntryStreamer.MAX_REPLAY_SIZE;
+
+    private SARCStreamReader() {
+    }
+
+    /**
+     * Reads the archive from {@code in}, which is left open and positioned after the last entry read.
+     *
+     * @return {@code false} if the visitor stopped early with {@link FileVisitResult#TERMINATE}
+     */
+    public static boolean read(InputStream in, Visitor visitor) throws IOException {
+        final ByteBuffer header = ByteBuffer.wrap(EntryStreamer.readFully(in, SARCTables.FIXED_SIZE, "SARC"));
+        final SARCTables tables = SARCTables.read(
+            header, -1, size -> ByteBuffer.wrap(EntryStreamer.readFully(in, size, "SARC"))
+        );
+        return EntryStreamer.stream(
+            in, tables.dataStart, sortEntries(tables),
+            index -> (long)tables.dataStart + tables.beginData[index], tables::dataSize, "SARC",
+            (index, data) -> visit(tables, index, data, visitor)
+        );
+    }
+
+    /**
+     * @return The indices of all entries, in data order
+     */
+    private static int[] sortEntries(SARCTables tables) {
+        final long[] keys = new long[tables.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = (long)tables.beginData[i] << 32 | i;
+        }
+        Arrays.sort(keys);
+        final int[] result = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            result[i] = (int)keys[i];
+        }
+        return result;
+    }
+
+    /**
+     * @return Whether to stop
+     */
+    private static boolean visit(SARCTables tables, int index, InputStream data, Visitor visitor) throws IOException {
+        final Entry entry = new Entry(tables.readName(index), tables.hashes[index], tables.beginData[index], tables.dataSize(index));
+        return visitor.visitFile(entry, data) == FileVisitResult.TERMINATE;
+    }
+
+    /**
+     * @param name The stored name, or {@code null} if the entry only has a hash
+     * @param dataOffset The offset of the entry's data from the start of the data section
+     */
+    public record Entry(@Nullable String name, int hash, int dataOffset, int size) {
+    }
+
+    @FunctionalInterface
+    public interface Visitor {
+        /**
+         * @param data The entry's data. It's only valid during this call, and closing it does nothing. Any of it left
+         * unread is skipped.
+         * @return {@link FileVisitResult#TERMINATE} to stop reading; anything else continues
+         */
+        FileVisitResult visitFile(Entry entry, InputStream data) throws IOException;
+    }
+}
@@ -0,0 +1,244 @@
+package io.github.gaming32.szslib.sarc;
+
+import io.github.gaming32.szslib.SzsDetector;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The header, SFAT, and SFNT of a SARC archive, kept as flat arrays. No names are decoded until asked for.
+ */
+final class SARCTables {
+    static final int HEADER_SIZE = 0x14;
+    static final int SFAT_HEADER_SIZE = 0xC;
+    /**
+     * The size of the fixed part read by {@link #read}, up to the first SFAT entry
+     */
+    static final int FIXED_SIZE = HEADER_SIZE + SFAT_HEADER_SIZE;
+
+    static final int SFAT_MAGIC = 0x53464154;
+    static final int SFNT_MAGIC = 0x53464E54;
+    static final int SFAT_ENTRY_SIZE = 0x10;
+    static final int SFNT_HEADER_SIZE = 0x8;
+    static final int HAS_NAME = 0x01000000;
+
+    final int fileSize;
+    final int dataStart;
+    final int hashKey;
+    final int[] hashes;
+    // -1 for entries without a stored name
+    final int[] nameOffsets;
+    final int[] beginData;
+    final int[] endData;
+    final byte[] nameTable;
+    final boolean sortedByHash;
+
+    /**
+     * @param header The first {@link #FIXED_SIZE} bytes of the archive
+     * @param archiveSize The number of bytes available, or {@code -1} if unknown
+     * @param rest Supplies the SFAT entries, the SFNT header, and the name table, which follow {@code header}
+     */
+    private SARCTables(ByteBuffer header, long archiveSize, TableReader rest) throws IOException {
+        if (header.getInt(0) != SzsDetector.SARC_MAGIC) {
+            throw new IOException("Invalid SARC magic");
+        }
+        if (header.getInt(HEADER_SIZE) != SFAT_MAGIC) {
+            throw new IOException("Invalid SFAT magic");
+        }
+        final ByteOrder order = getByteOrder(header.getShort(6));
+        header.order(order);
+        fileSize = header.getInt(0x08);
+        dataStart = header.getInt(0x0C);
+        final int version = header.getShort(0x10) & 0xffff;
+        if (version != 0x100) {
+            throw new IOException("Unknown SARC version: " + version);
+        }
+        if (fileSize < 0 || archiveSize >= 0 && fileSize > archiveSize) {
+            throw new EOFException("SARC file truncated: expected " + fileSize + " bytes, got " + archiveSize);
+        }
+        final int nodeCount = header.getShort(HEADER_SIZE + 6) & 0xffff;
+        hashKey = header.getInt(HEADER_SIZE + 8);
+
+        final int sfntOffset = SFAT_ENTRY_SIZE * nodeCount;
+        final int namesOffset = sfntOffset + SFNT_HEADER_SIZE;
+        if (dataStart < FIXED_SIZE + namesOffset || dataStart > fileSize) {
+            throw new IOException("Invalid SARC data offset: 0x" + Integer.toHexString(dataStart));
+        }
+        final ByteBuffer tables = rest.read(dataStart - FIXED_SIZE).order(order);
+        if (tables.getInt(sfntOffset) != (order == ByteOrder.BIG_ENDIAN ? SFNT_MAGIC : Integer.reverseBytes(SFNT_MAGIC))) {
+            throw new IOException("Invalid SFNT magic");
+        }
+        nameTable = new byte[tables.capacity() - namesOffset];
+        tables.get(namesOffset, nameTable);
+
+        final int dataSize = fileSize - dataStart;
+        hashes = new int[nodeCount];
+        nameOffsets = new int[nodeCount];
+        beginData = new int[nodeCount];
+        endData = new int[nodeCount];
+        boolean sorted = true;
+        for (int i = 0; i < nodeCount; i++) {
+            final int entry = SFAT_ENTRY_SIZE * i;
+            final int hash = tables.getInt(entry);
+            final int attrs = tables.getInt(entry + 4);
+            final int begin = tables.getInt(entry + 8);
+            final int end = tables.getInt(entry + 12);
+            if (begin < 0 || end < begin || end > dataSize) {
+                throw new IOException("Invalid SARC data range: " + begin + " to " + end);
+            }
+            hashes[i] = hash;
+            beginData[i] = begin;
+            endData[i] = end;
+            if (i > 0 && Integer.compareUnsigned(hashes[i - 1], hash) > 0) {
+                sorted = false;
+            }
+            if ((attrs & HAS_NAME) == 0) {
+                // Unknown filename. Only reachable by hash.
+                nameOffsets[i] = -1;
+                continue;
+            }
+            final int nameOffset = (attrs & 0xFFFF) << 2;
+            if (nameOffset >= nameTable.length) {
+                throw new IOException("Invalid SARC name offset: 0x" + Integer.toHexString(nameOffset));
+            }
+            final NameView name = new NameView(nameTable, nameOffset, nameEnd(nameOffset));
+            final int readHash = SARCFile.hashFileName(name, hashKey);
+            if (readHash != hash) {
+                final String filename = name.toString();
+                throw new IOException("Hash of filename " + filename + " does not match header: " + readHash + " != " + hash);
+            }
+            nameOffsets[i] = nameOffset;
+        }
+        sortedByHash = sorted;
+    }
+
+    static SARCTables read(ByteBuffer header, long archiveSize, TableReader rest) throws IOException {
+        return new SARCTables(header, archiveSize, rest);
+    }
+
+    static ByteOrder getByteOrder(short bom) throws IOException {
+        return switch (bom & 0xffff) {
+            case 0xFEFF -> ByteOrder.BIG_ENDIAN;
+            case 0xFFFE -> ByteOrder.LITTLE_ENDIAN;
+            default -> throw new IOException("Invalid SARC BOM: 0x" + Integer.toHexString(bom & 0xffff));
+        };
+    }
+
+    private int nameEnd(int offset) {
+        int end = offset;
+        while (end < nameTable.length && nameTable[end] != 0) {
+            end++;
+        }
+        return end;
+    }
+
+    int size() {
+        return hashes.length;
+    }
+
+    int dataSize(int index) {
+        return endData[index] - beginData[index];
+    }
+
+    /**
+     * @return The index of the entry named {@code name}, or {@code -1}
+     */
+    int find(String name) {
+        final int hash = SARCFile.hashFileName(name, hashKey);
+        for (int i = findHash(hash, 0); i >= 0; i = findHash(hash, i + 1)) {
+            if (nameOffsets[i] >= 0 && nameEquals(nameOffsets[i], name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return The index of the first entry at or after {@code from} with {@code hash}, or {@code -1}. When the SFAT is
+     * sorted, any {@code from} other than 0 must follow an entry with the same hash.
+     */
+    int findHash(int hash, int from) {
+        if (!sortedByHash) {
+            for (int i = from; i < hashes.length; i++) {
+                if (hashes[i] == hash) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        if (from > 0) {
+            return from < hashes.length && hashes[from] == hash ? from : -1;
+        }
+        int low = 0;
+        int high = hashes.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (Integer.compareUnsigned(hashes[mid], hash) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low < hashes.length && hashes[low] == hash ? low : -1;
+    }
+
+    private boolean nameEquals(int offset, String name) {
+        final int end = offset + name.length();
+        if (end > nameTable.length || end < nameTable.length && nameTable[end] != 0) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if ((nameTable[offset + i] & 0xff) != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The stored name, or {@code null} if the entry only has a hash
+     */
+    String readName(int index) {
+        final int offset = nameOffsets[index];
+        if (offset < 0) {
+            return null;
+        }
+        return new String(nameTable, offset, nameEnd(offset) - offset, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * An ISO-8859-1 name in the name table, viewed without decoding it
+     */
+    private record NameView(byte[] table, int start, int end) implements CharSequence {
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char)(table[start + index] & 0xff);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return new NameView(table, start + from, start + to);
+        }
+
+        @Override
+        public String toString() {
+            return new String(table, start, end - start, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    @FunctionalInterface
+    interface TableReader {
+        /**
+         * @return A buffer of exactly {@code size} bytes, positioned at 0
+         */
+        ByteBuffer read(int size) throws IOException;
+    }
+}
@@ -0,0 +1,435 @@
+package io.github.gaming32.szslib.sarc;
+
+import io.github.gaming32.szslib.SzsDetector;
+import io.github.gaming32.szslib.decompressed.DecompressedSzsFile;
+import io.github.gaming32.szslib.util.ChannelIO;
+import io.github.gaming32.szslib.util.Deduplicator;
+import io.github.gaming32.szslib.util.EntrySource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Builds SARC archives. Entries are collected as sources, and file data is only read when the archive is written, in
+ * a single pass straight to the output. Entries are written in SFAT order, which is sorted by filename hash.
+ * <p>
+ * Large archives are written with their filenames hashed on the {@link ForkJoinPool#commonPool() common pool}, and
+ * file sources read ahead on it, while the output is still written in order. With {@link #setDeduplicate
+ * deduplication} on, entries with identical content share a single copy of their data.
+ * <p>
+ * To write a compressed archive, pass a {@link io.github.gaming32.szslib.yaz0.Yaz0OutputStream Yaz0OutputStream} to
+ * {@link #write(OutputStream)}.
+ *
+ * @apiNote Thread-safety: {@link SARCWriter} is not thread-safe.
+ */
+public final class SARCWriter {
+    public static final int DEFAULT_HASH_KEY = 0x65;
+    public static final int DEFAULT_ALIGNMENT = 4;
+
+    private static final int MAX_NODES = 0xFFFF;
+    private static final int MAX_NAME_OFFSET = 0x10000 << 2;
+    private static final int COPY_BUFFER_SIZE = 0x10000;
+    private static final int PARALLEL_THRESHOLD = 64;
+    private static final long READ_AHEAD_LIMIT = 32L << 20;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private final Map<String, Integer> extensionAlignments = new HashMap<>();
+    private ByteOrder byteOrder = ByteOrder.LITTLE_ENDIAN;
+    private int hashKey = DEFAULT_HASH_KEY;
+    private int alignment = DEFAULT_ALIGNMENT;
+    private boolean deduplicate;
+    private long bytesSaved;
+
+    public ByteOrder getByteOrder() {
+        return byteOrder;
+    }
+
+    /**
+     * Sets the byte order, which is stored in the BOM. Switch archives are {@link ByteOrder#LITTLE_ENDIAN little-endian}
+     * (the default), and Wii U archives are {@link ByteOrder#BIG_ENDIAN big-endian}.
+     */
+    public SARCWriter setByteOrder(ByteOrder byteOrder) {
+        this.byteOrder = byteOrder;
+        return this;
+    }
+
+    public int getHashKey() {
+        return hashKey;
+    }
+
+    public SARCWriter setHashKey(int hashKey) {
+        this.hashKey = hashKey;
+        return this;
+    }
+
+    public int getAlignment() {
+        return alignment;
+    }
+
+    /**
+     * Sets the alignment of entries with no {@link #setAlignment(String, int) extension rule}. The data section is
+     * aligned to the largest alignment in use, so every entry is aligned relative to the start of the archive too.
+     */
+    public SARCWriter setAlignment(int alignment) {
+        this.alignment = checkAlignment(alignment);
+        return this;
+    }
+
+    /**
+     * Sets the alignment of entries whose names end with {@code .extension}, such as {@code 0x2000} for
+     * {@code bfres}.
+     */
+    public SARCWriter setAlignment(String extension, int alignment) {
+        extensionAlignments.put(extension, checkAlignment(alignment));
+        return this;
+    }
+
+    public boolean isDeduplicate() {
+        return deduplicate;
+    }
+
+    /**
+     * Sets whether entries with identical content are stored once, with all of their SFAT entries pointing at the
+     * same data. Finding them reads every entry whose size matches another's before the archive is written, so those
+     * sources are read twice.
+     */
+    public SARCWriter setDeduplicate(boolean deduplicate) {
+        this.deduplicate = deduplicate;
+        return this;
+    }
+
+    /**
+     * @return The number of bytes of file data that the last {@code write} stored once instead of repeating
+     */
+    public long getBytesSaved() {
+        return bytesSaved;
+    }
+
+    public SARCWriter addFile(String path, byte[] data) {
+        return addFile(path, ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Adds the remaining content of {@code data}. The buffer isn't copied, so it must not be modified until the
+     * archive is written.
+     */
+    public SARCWriter addFile(String path, ByteBuffer data) {
+        return addFile(path, EntrySource.of(data));
+    }
+
+    /**
+     * Adds a file from disk. Its size is taken now, and its content is copied when the archive is written.
+     */
+    public SARCWriter addFile(String path, Path file) throws IOException {
+        return addFile(path, EntrySource.of(file, "SARC"));
+    }
+
+    /**
+     * Adds a file from another archive, such as a {@link SARCFile} that stays open until this archive is written.
+     * The archive must allow concurrent reads, since large archives are read ahead in parallel.
+     */
+    public SARCWriter addFile(String path, DecompressedSzsFile.FileNode node) {
+        return addFile(path, EntrySource.of(node));
+    }
+
+    /**
+     * Adds every file under {@code dir} below {@code path}. SARC archives have no directory entries, so empty
+     * directories are dropped.
+     */
+    public SARCWriter addAll(String path, DecompressedSzsFile.DirectoryNode dir) {
+        final String prefix = path.isEmpty() || path.endsWith("/") ? path : path + "/";
+        for (final DecompressedSzsFile.TreeNode child : dir.getChildren().values()) {
+            if (child instanceof DecompressedSzsFile.DirectoryNode subdir) {
+                addAll(prefix + child.getName(), subdir);
+            } else if (child instanceof DecompressedSzsFile.FileNode file) {
+                addFile(prefix + child.getName(), file);
+            }
+        }
+        return this;
+    }
+
+    private SARCWriter addFile(String path, EntrySource source) {
+        final String name = normalizePath(path);
+        if (entries.putIfAbsent(name, new Entry(name, source)) != null) {
+            throw new IllegalArgumentException("Duplicate entry: " + path);
+        }
+        return this;
+    }
+
+    public long write(Path path) throws IOException {
+        try (FileChannel out = FileChannel.open(
+            path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING
+        )) {
+            return write(out);
+        }
+    }
+
+    /**
+     * Writes the archive to {@code out}, which is left open.
+     */
+    public long write(OutputStream out) throws IOException {
+        final long written = write(Channels.newChannel(out));
+        out.flush();
+        return written;
+    }
+
+    /**
+     * Writes the archive to {@code out}, which is left open.
+     *
+     * @return The number of bytes written
+     */
+    public long write(WritableByteChannel out) throws IOException {
+        final Entry[] sorted = entries.values().toArray(Entry[]::new);
+        if (sorted.length > MAX_NODES) {
+            throw new IOException("Too many SARC entries: " + sorted.length);
+        }
+        final boolean parallel = sorted.length >= PARALLEL_THRESHOLD;
+        final int hashKey = this.hashKey;
+        (parallel ? Arrays.stream(sorted).parallel() : Arrays.stream(sorted))
+            .forEach(entry -> entry.hash = SARCFile.hashFileName(entry.name, hashKey));
+        Arrays.sort(sorted, (a, b) -> {
+            final int result = Integer.compareUnsigned(a.hash, b.hash);
+            return result != 0 ? result : Arrays.compareUnsigned(a.encodedName, b.encodedName);
+        });
+
+        final ByteBuffer names = layoutNames(sorted);
+        int maxAlignment = 1;
+        for (final Entry entry : sorted) {
+            entry.alignment = alignmentOf(entry.name);
+            maxAlignment = Math.max(maxAlignment, entry.alignment);
+        }
+        final int tablesSize = SARCTables.HEADER_SIZE + SARCTables.SFAT_HEADER_SIZE + SARCTables.SFAT_ENTRY_SIZE * sorted.length + SARCTables.SFNT_HEADER_SIZE +
+            names.remaining();
+        final long dataStart = align(tablesSize, maxAlignment);
+        final int[] sameAs = deduplicate ? findDuplicates(sorted) : null;
+        if (sameAs != null) {
+            // Shared data has to satisfy the strictest alignment of the entries using it
+            for (int i = 0; i < sorted.length; i++) {
+                final Entry original = sorted[sameAs[i]];
+                original.alignment = Math.max(original.alignment, sorted[i].alignment);
+            }
+        }
+        long end = 0;
+        long saved = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            final Entry entry = sorted[i];
+            entry.duplicate = sameAs != null && sameAs[i] != i;
+            if (entry.duplicate) {
+                entry.dataOffset = sorted[sameAs[i]].dataOffset;
+                saved += entry.source.size();
+                continue;
+            }
+            entry.dataOffset = align(end, entry.alignment);
+            end = entry.dataOffset + entry.source.size();
+        }
+        bytesSaved = saved;
+        final long fileSize = dataStart + end;
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new IOException("SARC archive too large: " + fileSize + " bytes");
+        }
+
+        final ByteBuffer header = ByteBuffer.allocate((int)dataStart).order(byteOrder);
+        putMagic(header, SzsDetector.SARC_MAGIC)
+            .putShort((short)SARCTables.HEADER_SIZE)
+            .putShort((short)0xFEFF)
+            .putInt((int)fileSize)
+            .putInt((int)dataStart)
+            .putShort((short)0x100)
+            .putShort((short)0);
+        putMagic(header, SARCTables.SFAT_MAGIC)
+            .putShort((short)SARCTables.SFAT_HEADER_SIZE)
+            .putShort((short)sorted.length)
+            .putInt(hashKey);
+        for (final Entry entry : sorted) {
+            header.putInt(entry.hash)
+                .putInt(SARCTables.HAS_NAME | entry.nameOffset >> 2)
+                .putInt((int)entry.dataOffset)
+                .putInt((int)(entry.dataOffset + entry.source.size()));
+        }
+        putMagic(header, SARCTables.SFNT_MAGIC)
+            .putShort((short)SARCTables.SFNT_HEADER_SIZE)
+            .putShort((short)0);
+        header.put(names);
+        ChannelIO.writeFully(out, header.clear());
+
+        final ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+        final ReadAhead readAhead = parallel ? new ReadAhead(sorted) : null;
+        try {
+            long position = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                final Entry entry = sorted[i];
+                if (entry.duplicate) continue;
+                ChannelIO.writeZeros(out, entry.dataOffset - position, buffer);
+                final ByteBuffer data = readAhead != null ? readAhead.take(i) : null;
+                if (data != null) {
+                    ChannelIO.writeFully(out, data);
+                } else {
+                    entry.source.writeTo(out, buffer);
+                }
+                position = entry.dataOffset + entry.source.size();
+            }
+        } finally {
+            if (readAhead != null) {
+                readAhead.cancel();
+            }
+        }
+        return fileSize;
+    }
+
+    private static int[] findDuplicates(Entry[] sorted) throws IOException {
+        final int[] sizes = new int[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            sizes[i] = sorted[i].source.isRepeatable() ? sorted[i].source.size() : -1;
+        }
+        return Deduplicator.find(sizes, (index, out, buffer) -> sorted[index].source.writeTo(out, buffer));
+    }
+
+    private ByteBuffer layoutNames(Entry[] sorted) throws IOException {
+        int size = 0;
+        for (final Entry entry : sorted) {
+            entry.nameOffset = size;
+            size = (int)align(size + entry.encodedName.length + 1L, 4);
+        }
+        if (sorted.length > 0 && sorted[sorted.length - 1].nameOffset >= MAX_NAME_OFFSET) {
+            throw new IOException("SARC name table too large: " + size + " bytes");
+        }
+        final ByteBuffer names = ByteBuffer.allocate(size);
+        for (final Entry entry : sorted) {
+            names.put(entry.nameOffset, entry.encodedName);
+        }
+        return names;
+    }
+
+    private int alignmentOf(String name) {
+        final int dot = name.lastIndexOf('.');
+        if (dot >= 0 && dot > name.lastIndexOf('/')) {
+            final Integer result = extensionAlignments.get(name.substring(dot + 1));
+            if (result != null) {
+                return result;
+            }
+        }
+        return alignment;
+    }
+
+    private ByteBuffer putMagic(ByteBuffer buffer, int magic) {
+        return buffer.putInt(buffer.order() == ByteOrder.BIG_ENDIAN ? magic : Integer.reverseBytes(magic));
+    }
+
+    private static long align(long offset, int alignment) {
+        return (offset + alignment - 1) & -alignment;
+    }
+
+    private static int checkAlignment(int alignment) {
+        if (alignment <= 0 || Integer.bitCount(alignment) != 1) {
+            throw new IllegalArgumentException("alignment must be a power of two: " + alignment);
+        }
+        return alignment;
+    }
+
+    private static String normalizePath(String path) {
+        final StringJoiner result = new StringJoiner("/");
+        for (final String part : path.split("/")) {
+            if (part.isEmpty()) continue;
+            for (int i = 0; i < part.length(); i++) {
+                final char c = part.charAt(i);
+                if (c == 0 || c > 0xff) {
+                    throw new IllegalArgumentException("Invalid character in SARC name " + path + ": 0x" + Integer.toHexString(c));
+                }
+            }
+            result.add(part);
+        }
+        if (result.length() == 0) {
+            throw new IllegalArgumentException("Missing file name: " + path);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Reads sources ahead of the writer on the common pool, keeping at most {@link #READ_AHEAD_LIMIT} bytes in
+     * flight. Sources that are already in memory, or too large to fit, are left for the writer to stream.
+     */
+    private static final class ReadAhead {
+        private final Entry[] entries;
+        private final CompletableFuture<?>[] futures;
+        private int next;
+        private long inFlight;
+
+        ReadAhead(Entry[] entries) {
+            this.entries = entries;
+            futures = new CompletableFuture<?>[entries.length];
+        }
+
+        ByteBuffer take(int index) throws IOException {
+            while (next < entries.length && (next <= index || inFlight + entries[next].source.size() <= READ_AHEAD_LIMIT)) {
+                final EntrySource source = entries[next].source;
+                if (!entries[next].duplicate && !source.isLoaded() && source.size() <= READ_AHEAD_LIMIT) {
+                    futures[next] = CompletableFuture.supplyAsync(() -> {
+                        try {
+                            return source.read();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }, ForkJoinPool.commonPool());
+                    inFlight += source.size();
+                }
+                next++;
+            }
+            final CompletableFuture<?> future = futures[index];
+            if (future == null) {
+                return null;
+            }
+            futures[index] = null;
+            inFlight -= entries[index].source.size();
+            try {
+                return (ByteBuffer)future.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof UncheckedIOException io) {
+                    throw io.getCause();
+                }
+                throw e;
+            }
+        }
+
+        void cancel() {
+            for (final CompletableFuture<?> future : futures) {
+                if (future != null) {
+                    future.cancel(false);
+                }
+            }
+        }
+    }
+
+    private static final class Entry {
+        final String name;
+        final byte[] encodedName;
+        final EntrySource source;
+        int hash;
+        int nameOffset;
+        int alignment;
+        long dataOffset;
+        boolean duplicate;
+
+        Entry(String name, EntrySource source) {
+            this.name = name;
+            this.encodedName = name.getBytes(StandardCharsets.ISO_8859_1);
+            this.source = source;
+        }
+    }
+}
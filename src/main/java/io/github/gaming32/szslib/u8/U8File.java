@@ -2,33 +2,48 @@ package io.github.gaming32.szslib.u8;
 
 import io.github.gaming32.szslib.SzsDetector;
 import io.github.gaming32.szslib.decompressed.DecompressedSzsFile;
+import io.github.gaming32.szslib.decompressed.PathHash;
+import io.github.gaming32.szslib.util.ByteBufferChannel;
+import io.github.gaming32.szslib.util.PositionalReader;
+import io.github.gaming32.szslib.yaz0.Yaz0LazyChannel;
+import io.github.gaming32.szslib.yaz0.Yaz0ReadableByteChannel;
 import org.apache.commons.compress.utils.IOUtils;
-import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
-import java.nio.channels.ClosedChannelException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.SeekableByteChannel;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * @apiNote Thread-safety: a {@link U8File} instance is thread-safe, but any archived streams opened for reading using
- * {@link FileNode#openChannel} or {@link FileNode#openInputStream} are not.
+ * {@link FileNode#openChannel} or {@link FileNode#openInputStream} are not. Archives opened with {@link #fromMapped},
+ * {@link #fromByteBuffer} or {@link #fromByteArray} are read from slices of their buffer, and archives over a
+ * {@link FileChannel} or {@link Yaz0LazyChannel} use positional reads, so neither needs a lock. Only other channels
+ * are read under a lock, since they have to be repositioned before each read.
  */
 public class U8File implements DecompressedSzsFile {
-    private SeekableByteChannel channel;
-    private TreeNode[] allNodes;
-    private DirectoryNode rootNode;
+    private volatile SeekableByteChannel channel;
+    private ByteBuffer buffer;
+    private final PositionalReader reader;
 
-    private WeakReference<Object> channelOwner = new WeakReference<>(null);
+    // Immutable, so nodes obtained before the archive was closed stay usable
+    private final U8NodeTable nodes;
+    private final AtomicReferenceArray<TreeNode> views;
+    private volatile PathIndex pathIndex;
 
-    private U8File(SeekableByteChannel channel) throws IOException {
+    private U8File(SeekableByteChannel channel, U8Limits limits) throws IOException {
         this.channel = channel;
+        if (channel instanceof ByteBufferChannel bufferChannel) {
+            buffer = bufferChannel.getBuffer();
+        }
+        reader = PositionalReader.of(channel);
 
         try {
             final ByteBuffer header = ByteBuffer.allocate(16);
@@ -42,51 +57,146 @@ public class U8File implements DecompressedSzsFile {
             final int treeLen = header.getInt();
             final int dataOffset = header.getInt();
 
-            final ByteBuffer treeBuf = ByteBuffer.allocate(treeLen);
+            final long archiveSize = channel.size();
+            if (firstNodeOffset < 16 || treeLen < 0 || (long)firstNodeOffset + treeLen > archiveSize) {
+                throw new IOException("U8 node table extends past the end of the archive");
+            }
+            // Check the node count from the root node before allocating the whole tree
+            final ByteBuffer rootNode = ByteBuffer.allocate(U8NodeTable.NODE_SIZE);
             channel.position(firstNodeOffset);
+            IOUtils.readFully(channel, rootNode);
+            U8NodeTable.checkTreeSize(treeLen, rootNode.getInt(8), limits);
+
+            final ByteBuffer treeBuf = ByteBuffer.allocate(treeLen);
+            treeBuf.put(rootNode.flip());
             IOUtils.readFully(channel, treeBuf);
-            treeBuf.position(8);
-            final int lastNodeEnd = treeBuf.getInt();
-            treeBuf.rewind();
-
-            allNodes = new TreeNode[lastNodeEnd + 1];
-            final TreeNode root = readTree(treeBuf, lastNodeEnd * 12, 0);
-            if (!(root instanceof DirectoryNode dir)) {
-                throw new IOException("Root node not a DirectoryNode!");
-            }
-            rootNode = dir;
+            nodes = U8NodeTable.read(treeBuf.flip(), limits, archiveSize);
+            views = new AtomicReferenceArray<>(nodes.size());
         } catch (IOException e) {
             channel.close();
             throw e;
         }
     }
 
-    private TreeNode readTree(ByteBuffer buffer, int stringPoolOffset, int index) throws IOException {
-        final TreeNode node = allNodes[index] = buffer.get() == 0
-            ? new FileNode(buffer, index, stringPoolOffset)
-            : new DirectoryNode(buffer, index, stringPoolOffset);
-        if (node instanceof DirectoryNode directory) {
-            int nextIndex = index + 1;
-            while (nextIndex < directory.siblingNodeIndex) {
-                final TreeNode child = readTree(buffer, stringPoolOffset, nextIndex);
-                if (child instanceof DirectoryNode subdir) {
-                    nextIndex = subdir.siblingNodeIndex;
-                } else if (child instanceof FileNode file) {
-                    nextIndex++;
-                    file.setParent(directory);
+    /**
+     * Returns the view of a node, creating it on first access. Each node only ever has one view.
+     */
+    private TreeNode node(int index) {
+        final TreeNode existing = views.get(index);
+        if (existing != null) {
+            return existing;
+        }
+        final TreeNode created = nodes.isDirectory(index) ? new DirectoryNode(index) : new FileNode(index);
+        final TreeNode witness = views.compareAndExchange(index, null, created);
+        return witness != null ? witness : created;
+    }
+
+    /**
+     * Builds an index from full path hashes to nodes, so that {@link #getNode(String)} and
+     * {@link #getNode(DecompressedSzsFile.DirectoryNode, String...)} cost one hash probe instead of a walk down the
+     * tree. The index takes 16 bytes per node and is only built once; later calls do nothing.
+     */
+    public void buildPathIndex() {
+        checkOpen();
+        if (pathIndex != null) return;
+        final int nodeCount = nodes.size();
+        final PathIndex index = new PathIndex(nodeCount);
+        index.hashes[0] = PathHash.ROOT;
+        for (int i = 1; i < nodeCount; i++) {
+            final int nameOffset = nodes.nameOffset(i);
+            index.put(i, PathHash.child(index.hashes[nodes.parents[i]], nodes.names, nameOffset, nodes.nameEnd(nameOffset)));
+        }
+        pathIndex = index;
+    }
+
+    private boolean pathEquals(int nodeIndex, String path, int start, int end) {
+        int pos = end;
+        int current = nodeIndex;
+        while (current != 0) {
+            final int nameOffset = nodes.nameOffset(current);
+            final int length = nodes.nameEnd(nameOffset) - nameOffset;
+            pos -= length;
+            if (pos < start) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (nodes.names[nameOffset + i] != path.charAt(pos + i)) {
+                    return false;
                 }
-                directory.children.put(child.getName(), child);
+            }
+            current = nodes.parents[current];
+            if (current != 0 && (--pos < start || path.charAt(pos) != '/')) {
+                return false;
             }
         }
-        return node;
+        return pos == start;
+    }
+
+    private boolean pathEquals(int nodeIndex, int baseIndex, String[] parts) {
+        int current = nodeIndex;
+        for (int i = parts.length - 1; i >= 0; i--) {
+            if (current == baseIndex || current == 0 || !nodes.nameEquals(current, parts[i])) {
+                return false;
+            }
+            current = nodes.parents[current];
+        }
+        return current == baseIndex;
     }
 
     public static U8File fromChannel(SeekableByteChannel channel) throws IOException {
-        return new U8File(channel);
+        return fromChannel(channel, U8Limits.UNLIMITED);
+    }
+
+    /**
+     * Reads the archive, rejecting it with an {@link IOException} if it exceeds {@code limits}. The channel is closed
+     * if the archive is rejected.
+     */
+    public static U8File fromChannel(SeekableByteChannel channel, U8Limits limits) throws IOException {
+        return new U8File(channel, limits);
+    }
+
+    /**
+     * Reads a U8 archive from a channel that can't seek. The channel is read to the end into a single buffer and
+     * closed. A {@link Yaz0ReadableByteChannel} decodes straight into a buffer of its uncompressed size.
+     */
+    public static U8File fromChannel(ReadableByteChannel channel) throws IOException {
+        if (channel instanceof SeekableByteChannel seekable) {
+            return fromChannel(seekable);
+        }
+        try (channel) {
+            if (channel instanceof Yaz0ReadableByteChannel yaz0) {
+                final ByteBuffer buffer = ByteBuffer.allocate(yaz0.getUncompressedSize());
+                IOUtils.readFully(channel, buffer);
+                return fromByteBuffer(buffer.flip());
+            }
+            return fromByteArray(Channels.newInputStream(channel).readAllBytes());
+        }
     }
 
     public static U8File fromByteArray(byte[] bytes) throws IOException {
-        return new U8File(new SeekableInMemoryByteChannel(bytes));
+        return fromByteBuffer(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Reads the U8 archive starting at {@code buffer.position()} in place. The buffer isn't copied, so it must not be
+     * modified while the {@link U8File} is open.
+     */
+    public static U8File fromByteBuffer(ByteBuffer buffer) throws IOException {
+        return fromByteBuffer(buffer, U8Limits.UNLIMITED);
+    }
+
+    public static U8File fromByteBuffer(ByteBuffer buffer, U8Limits limits) throws IOException {
+        return new U8File(new ByteBufferChannel(buffer), limits);
+    }
+
+    /**
+     * Maps the U8 archive at {@code path} into memory once. Files are then read from read-only slices of the mapping
+     * (see {@link FileNode#asByteBuffer}), with no locking or system calls.
+     */
+    public static U8File fromMapped(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return fromByteBuffer(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
     }
 
     public static U8File fromInputStream(InputStream is) throws IOException {
@@ -94,44 +204,84 @@ public class U8File implements DecompressedSzsFile {
     }
 
     public static U8File fromPath(Path path) throws IOException {
-        return new U8File(Files.newByteChannel(path, StandardOpenOption.READ));
+        return fromPath(path, U8Limits.UNLIMITED);
+    }
+
+    public static U8File fromPath(Path path, U8Limits limits) throws IOException {
+        return new U8File(Files.newByteChannel(path, StandardOpenOption.READ), limits);
     }
 
     public static U8File fromFile(File file) throws IOException {
         return fromPath(file.toPath());
     }
 
-    @Override
-    public DirectoryNode getRoot() {
-        if (rootNode == null) {
+    private void checkOpen() {
+        if (channel == null) {
             throw new IllegalStateException("U8File closed");
         }
-        return rootNode;
+    }
+
+    @Override
+    public DirectoryNode getRoot() {
+        checkOpen();
+        return (DirectoryNode)node(0);
     }
 
     public void walk(FileVisitor<TreeNode> visitor) throws IOException {
-        rootNode.walk(visitor);
+        getRoot().walk(visitor);
     }
 
     @Override
     public TreeNode getNode(String path) {
-        if (rootNode == null) {
-            throw new IllegalStateException("U8File closed");
+        checkOpen();
+        final PathIndex index = pathIndex;
+        if (index == null) {
+            return (TreeNode)DecompressedSzsFile.super.getNode(path);
+        }
+        final int start = path.startsWith("/") ? 1 : 0;
+        // Trailing slashes are ignored, as they are by the tree walk
+        int end = path.length();
+        while (end > start && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        final long hash = PathHash.append(PathHash.ROOT, path, start, end);
+        for (int slot = index.slot(hash); index.slots[slot] != 0; slot = (slot + 1) & index.mask) {
+            final int nodeIndex = index.slots[slot] - 1;
+            if (index.hashes[nodeIndex] == hash && pathEquals(nodeIndex, path, start, end)) {
+                return node(nodeIndex);
+            }
+        }
+        // Every node is in the index, so there's nothing to fall back on
+        return null;
+    }
+
+    @Override
+    public TreeNode getNode(DecompressedSzsFile.DirectoryNode base, String... parts) {
+        checkOpen();
+        final PathIndex index = pathIndex;
+        if (index == null || !(base instanceof DirectoryNode dir) || dir.getFile() != this) {
+            return (TreeNode)DecompressedSzsFile.super.getNode(base, parts);
+        }
+        long hash = index.hashes[dir.nodeIndex];
+        for (final String part : parts) {
+            hash = PathHash.child(hash, part);
+        }
+        for (int slot = index.slot(hash); index.slots[slot] != 0; slot = (slot + 1) & index.mask) {
+            final int nodeIndex = index.slots[slot] - 1;
+            if (index.hashes[nodeIndex] == hash && pathEquals(nodeIndex, dir.nodeIndex, parts)) {
+                return node(nodeIndex);
+            }
         }
-        return (TreeNode)DecompressedSzsFile.super.getNode(path);
+        return null;
     }
 
     @Override
     public void close() throws IOException {
         try {
-            synchronized (U8File.this) {
-                channel.close();
-            }
+            channel.close();
         } finally {
-            rootNode = null;
-            allNodes = null;
             channel = null;
-            channelOwner.clear();
+            buffer = null;
         }
     }
 
@@ -140,71 +290,113 @@ public class U8File implements DecompressedSzsFile {
         return channel != null;
     }
 
-    private static String readString(ByteBuffer buffer) {
-        if (!buffer.hasArray()) {
-            final StringBuilder result = new StringBuilder();
-            while (true) {
-                final byte b = buffer.get();
-                if (b == 0) break;
-                if (b < 0) {
-                    throw new IllegalArgumentException("Cannot decode 0x" + Integer.toHexString(b & 0xff) + " with ASCII");
-                }
-                result.append((char)b);
+    /**
+     * Open addressing table from path hash to node index. Slots hold the node index plus one, so zero marks an empty
+     * slot, and the hash of every node is kept by index.
+     */
+    private static final class PathIndex {
+        final long[] hashes;
+        final int[] slots;
+        final int mask;
+
+        PathIndex(int nodeCount) {
+            hashes = new long[nodeCount];
+            slots = new int[1 << (32 - Integer.numberOfLeadingZeros(nodeCount * 2 - 1))];
+            mask = slots.length - 1;
+        }
+
+        int slot(long hash) {
+            return (int)(hash ^ hash >>> 32) & mask;
+        }
+
+        void put(int nodeIndex, long hash) {
+            hashes[nodeIndex] = hash;
+            int slot = slot(hash);
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
             }
-            return result.toString();
-        }
-        final int start = buffer.position();
-        //noinspection StatementWithEmptyBody
-        while (buffer.get() != 0) {
-            // Just advances the buffer
-        }
-        return new String(
-            buffer.array(),
-            buffer.arrayOffset() + start,
-            buffer.position() - start - 1,
-            StandardCharsets.US_ASCII
-        );
+            slots[slot] = nodeIndex + 1;
+        }
     }
 
     public abstract sealed class TreeNode implements DecompressedSzsFile.TreeNode permits DirectoryNode, FileNode {
         private static final DirectoryNode[] NO_PARENTS = new DirectoryNode[0];
 
-        private final int nodeIndex;
-        private final String name;
+        protected final int nodeIndex;
+
+        // Cached on first use. Each node has a single view, so these are computed at most once per node (barring
+        // harmless races).
+        private String name;
+        private String fullPath;
+        private int depth = -1;
 
-        protected TreeNode(ByteBuffer buffer, int nodeIndex, int stringPoolOffset) {
+        protected TreeNode(int nodeIndex) {
             this.nodeIndex = nodeIndex;
-            final int nameOffset = ((buffer.getShort() & 0xffff) << 8) | (buffer.get() & 0xff);
-            buffer.mark();
-            buffer.position(stringPoolOffset + nameOffset);
-            name = readString(buffer);
-            buffer.reset();
+        }
+
+        public U8File getFile() {
+            return U8File.this;
         }
 
         @Override
         public String getName() {
-            return name;
+            String result = name;
+            if (result == null) {
+                name = result = nodes.readName(nodeIndex);
+            }
+            return result;
+        }
+
+        // This will return itself if it's the root
+        @Override
+        public DirectoryNode getParent() {
+            return (DirectoryNode)node(nodes.parents[nodeIndex]);
         }
 
         @Override
-        public abstract DirectoryNode getParent();
+        public boolean isRoot() {
+            return nodeIndex == 0;
+        }
 
         public abstract FileVisitResult walk(FileVisitor<TreeNode> visitor) throws IOException;
 
+        @Override
+        public int getDepth() {
+            int result = depth;
+            if (result < 0) {
+                result = 0;
+                for (int index = nodeIndex; index != 0; index = nodes.parents[index]) {
+                    result++;
+                }
+                depth = result;
+            }
+            return result;
+        }
+
+        /**
+         * Built from the parent's cached path, so listing a directory costs one concatenation per entry.
+         */
+        @Override
+        public String getFullPath() {
+            String result = fullPath;
+            if (result == null) {
+                result = isRoot() ? getName() : getParent().getFullPath() + '/' + getName();
+                fullPath = result;
+            }
+            return result;
+        }
+
         @Override
         public DirectoryNode[] getParents() {
-            DirectoryNode last = getParent();
-            if (this == last) {
+            if (nodeIndex == 0) {
                 return NO_PARENTS;
             }
-            final List<DirectoryNode> parents = new ArrayList<>();
-            while (last != last.getParent()) {
-                parents.add(last);
-                last = last.getParent();
+            int depth = getDepth();
+            final DirectoryNode[] result = new DirectoryNode[depth];
+            for (int index = nodes.parents[nodeIndex]; depth > 0; index = nodes.parents[index]) {
+                result[--depth] = (DirectoryNode)node(index);
             }
-            parents.add(last);
-            Collections.reverse(parents);
-            return parents.toArray(DirectoryNode[]::new);
+            return result;
         }
 
         @Override
@@ -214,29 +406,14 @@ public class U8File implements DecompressedSzsFile {
     }
 
     public final class DirectoryNode extends TreeNode implements DecompressedSzsFile.DirectoryNode {
-        private final int parentNodeIndex;
-        private final int siblingNodeIndex;
-        private final Map<String, TreeNode> children = new LinkedHashMap<>();
-
-        private DirectoryNode(ByteBuffer buffer, int nodeIndex, int stringPoolOffset) throws IOException {
-            super(buffer, nodeIndex, stringPoolOffset);
-            parentNodeIndex = buffer.getInt();
-            if (parentNodeIndex < 0 || parentNodeIndex >= allNodes.length) {
-                throw new IOException("Invalid parentNodeIndex (out of bounds): " + parentNodeIndex);
-            }
-            if (!(allNodes[parentNodeIndex] instanceof DirectoryNode) && parentNodeIndex != nodeIndex) {
-                throw new IOException("Invalid parentNodeIndex: parent node isn't a directory");
-            }
-            siblingNodeIndex = buffer.getInt();
-            if (siblingNodeIndex < 0 || siblingNodeIndex > allNodes.length) {
-                throw new IOException("Invalid siblingNodeIndex (out of bounds): " + siblingNodeIndex);
-            }
+        private Map<String, TreeNode> children;
+
+        private DirectoryNode(int nodeIndex) {
+            super(nodeIndex);
         }
 
-        // This will return itself if it's the root
-        @Override
-        public DirectoryNode getParent() {
-            return (DirectoryNode)allNodes[parentNodeIndex];
+        private int endIndex() {
+            return nodes.endIndex(nodeIndex);
         }
 
         @Override
@@ -249,8 +426,9 @@ public class U8File implements DecompressedSzsFile {
                 return FileVisitResult.CONTINUE;
             }
 
-            for (final TreeNode child : children.values()) {
-                final FileVisitResult sub = child.walk(visitor);
+            final int end = endIndex();
+            for (int index = nodeIndex + 1; index < end; index = nodes.nextSibling(index)) {
+                final FileVisitResult sub = node(index).walk(visitor);
                 if (sub == FileVisitResult.TERMINATE) {
                     return sub;
                 }
@@ -264,14 +442,26 @@ public class U8File implements DecompressedSzsFile {
             return last;
         }
 
+        /**
+         * Returns an unmodifiable view of the children, read from the node table as it's iterated.
+         */
         @Override
         public Map<String, TreeNode> getChildren() {
-            return Collections.unmodifiableMap(children);
+            if (children == null) {
+                children = new ChildrenMap();
+            }
+            return children;
         }
 
         @Override
         public TreeNode getChild(String name) {
-            return children.get(name);
+            final int end = endIndex();
+            for (int index = nodeIndex + 1; index < end; index = nodes.nextSibling(index)) {
+                if (nodes.nameEquals(index, name)) {
+                    return node(index);
+                }
+            }
+            return null;
         }
 
         @Override
@@ -283,22 +473,76 @@ public class U8File implements DecompressedSzsFile {
         public TreeNode resolveParts(String... parts) {
             return (TreeNode)DecompressedSzsFile.DirectoryNode.super.resolveParts(parts);
         }
+
+        private final class ChildrenMap extends AbstractMap<String, TreeNode> {
+            private int size = -1;
+
+            @Override
+            public TreeNode get(Object key) {
+                return key instanceof String name ? getChild(name) : null;
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return get(key) != null;
+            }
+
+            @Override
+            public int size() {
+                if (size < 0) {
+                    int count = 0;
+                    final int end = endIndex();
+                    for (int index = nodeIndex + 1; index < end; index = nodes.nextSibling(index)) {
+                        count++;
+                    }
+                    size = count;
+                }
+                return size;
+            }
+
+            @Override
+            public Set<Entry<String, TreeNode>> entrySet() {
+                return new AbstractSet<>() {
+                    @Override
+                    public Iterator<Entry<String, TreeNode>> iterator() {
+                        return new Iterator<>() {
+                            private final int end = endIndex();
+                            private int next = nodeIndex + 1;
+
+                            @Override
+                            public boolean hasNext() {
+                                return next < end;
+                            }
+
+                            @Override
+                            public Entry<String, TreeNode> next() {
+                                if (next >= end) {
+                                    throw new NoSuchElementException();
+                                }
+                                final TreeNode node = node(next);
+                                next = nodes.nextSibling(next);
+                                return new SimpleImmutableEntry<>(node.getName(), node);
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return ChildrenMap.this.size();
+                    }
+                };
+            }
+        }
     }
 
     public final class FileNode extends TreeNode implements DecompressedSzsFile.FileNode {
         private final int dataOffset;
         private final int size;
-        private DirectoryNode parent;
 
-        private FileNode(ByteBuffer buffer, int nodeIndex, int stringPoolOffset) {
-            super(buffer, nodeIndex, stringPoolOffset);
-            dataOffset = buffer.getInt();
-            size = buffer.getInt();
-        }
-
-        @Override
-        public DirectoryNode getParent() {
-            return parent;
+        private FileNode(int nodeIndex) {
+            super(nodeIndex);
+            dataOffset = nodes.dataOffset(nodeIndex);
+            size = nodes.dataSize(nodeIndex);
         }
 
         @Override
@@ -307,127 +551,34 @@ public class U8File implements DecompressedSzsFile {
             return result == FileVisitResult.SKIP_SUBTREE ? FileVisitResult.CONTINUE : result;
         }
 
-        private void setParent(DirectoryNode parent) {
-            this.parent = parent;
-        }
-
         @Override
         public int getSize() {
             return size;
         }
 
+        /**
+         * Returns the content of this file as a read-only buffer. For archives backed by a buffer, this is a slice of it
+         * and nothing is copied. Otherwise, the content is read into a new buffer.
+         */
+        public ByteBuffer asByteBuffer() throws IOException {
+            final ByteBuffer buffer = U8File.this.buffer;
+            if (buffer != null) {
+                return buffer.slice(dataOffset, size);
+            }
+            final ByteBuffer result = ByteBuffer.allocate(size);
+            try (SeekableByteChannel in = openChannel()) {
+                IOUtils.readFully(in, result);
+            }
+            return result.flip().asReadOnlyBuffer();
+        }
+
         @Override
         public SeekableByteChannel openChannel() {
-            return new SeekableByteChannel() {
-                private boolean closed;
-                private long position;
-
-                private void checkClosed() throws ClosedChannelException {
-                    if (!isOpen()) {
-                        throw new ClosedChannelException();
-                    }
-                }
-
-                private void refresh() throws IOException {
-                    if (channelOwner.refersTo(this)) return;
-                    channelOwner = new WeakReference<>(this);
-                    channel.position(dataOffset + position);
-                }
-
-                @Override
-                public int read(ByteBuffer dst) throws IOException {
-                    checkClosed();
-                    if (position >= size) {
-                        return -1;
-                    }
-                    int limit = -1;
-                    if (dst.remaining() > remaining()) {
-                        limit = dst.limit();
-                        dst.limit(dst.position() + remaining());
-                    }
-                    int read;
-                    try {
-                        synchronized (U8File.this) {
-                            refresh();
-                            read = channel.read(dst);
-                        }
-                        position += read;
-                    } finally {
-                        if (limit != -1) {
-                            dst.limit(limit);
-                        }
-                    }
-                    return read;
-                }
-
-                @Override
-                public int write(ByteBuffer src) throws ClosedChannelException {
-                    checkClosed();
-                    throw new UnsupportedOperationException("write");
-                }
-
-                @Override
-                public long position() throws ClosedChannelException {
-                    checkClosed();
-                    return position;
-                }
-
-                @Override
-                public SeekableByteChannel position(long newPosition) throws ClosedChannelException {
-                    checkClosed();
-                    if (newPosition < 0) {
-                        throw new IllegalArgumentException("newPosition < 0");
-                    }
-                    position = newPosition;
-                    return this;
-                }
-
-                @Override
-                public long size() throws ClosedChannelException {
-                    checkClosed();
-                    return size;
-                }
-
-                private int remaining() {
-                    if (position >= size) {
-                        return 0;
-                    }
-                    return size - (int)position;
-                }
-
-                @Override
-                public SeekableByteChannel truncate(long size) throws ClosedChannelException {
-                    if (size < 0) {
-                        throw new IllegalArgumentException("size < 0");
-                    }
-                    checkClosed();
-                    throw new UnsupportedOperationException("truncate");
-                }
-
-                @Override
-                public boolean isOpen() {
-                    if (closed) {
-                        return false;
-                    }
-                    synchronized (U8File.this) {
-                        if (channel == null) {
-                            closed = true;
-                        }
-                    }
-                    return !closed;
-                }
-
-                @Override
-                public void close() {
-                    final boolean wasClosed = closed;
-                    closed = true;
-                    if (!wasClosed) {
-                        synchronized (U8File.this) {
-                            channelOwner.clear();
-                        }
-                    }
-                }
-            };
+            final ByteBuffer buffer = U8File.this.buffer;
+            if (buffer != null) {
+                return new ByteBufferChannel(buffer.slice(dataOffset, size));
+            }
+            return reader.openRange(dataOffset, size, () -> channel != null);
         }
     }
 }
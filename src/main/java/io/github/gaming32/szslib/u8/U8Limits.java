@@ -0,0 +1,49 @@
+package io.github.gaming32.szslib.u8;
+
+/**
+ * Limits on the U8 archives a reader will accept. Counts and sizes from the header are checked against these before
+ * anything is allocated for them, so rejecting a hostile archive costs little. Use {@link #UNTRUSTED} or a tighter
+ * copy of it when reading user-supplied archives.
+ *
+ * @param maxNodes Maximum number of nodes, including the root
+ * @param maxDepth Maximum directory nesting below the root
+ * @param maxStringPoolSize Maximum size of the name string pool in bytes
+ * @param maxDataSize Maximum total size of all files in bytes
+ */
+public record U8Limits(int maxNodes, int maxDepth, int maxStringPoolSize, long maxDataSize) {
+    public static final U8Limits UNLIMITED = new U8Limits(
+        Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE
+    );
+    public static final U8Limits UNTRUSTED = new U8Limits(0x10000, 64, 0x100000, 0x40000000L);
+
+    public U8Limits {
+        if (maxNodes < 1) {
+            throw new IllegalArgumentException("maxNodes < 1");
+        }
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("maxDepth < 0");
+        }
+        if (maxStringPoolSize < 1) {
+            throw new IllegalArgumentException("maxStringPoolSize < 1");
+        }
+        if (maxDataSize < 0) {
+            throw new IllegalArgumentException("maxDataSize < 0");
+        }
+    }
+
+    public U8Limits withMaxNodes(int maxNodes) {
+        return new U8Limits(maxNodes, maxDepth, maxStringPoolSize, maxDataSize);
+    }
+
+    public U8Limits withMaxDepth(int maxDepth) {
+        return new U8Limits(maxNodes, maxDepth, maxStringPoolSize, maxDataSize);
+    }
+
+    public U8Limits withMaxStringPoolSize(int maxStringPoolSize) {
+        return new U8Limits(maxNodes, maxDepth, maxStringPoolSize, maxDataSize);
+    }
+
+    public U8Limits withMaxDataSize(long maxDataSize) {
+        return new U8Limits(maxNodes, maxDepth, maxStringPoolSize, maxDataSize);
+    }
+}
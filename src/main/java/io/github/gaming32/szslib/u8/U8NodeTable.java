@@ -0,0 +1,214 @@
+package io.github.gaming32.szslib.u8;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The node table and string pool of a U8 archive, kept as flat arrays.
+ */
+final class U8NodeTable {
+    static final int NODE_SIZE = 12;
+    private static final int NODE_INTS = NODE_SIZE / 4;
+    /**
+     * Name offsets are 24 bits, so no name can start past 16 MiB. This allows as much again for the last name, and
+     * applies whatever the limits.
+     */
+    private static final int MAX_STRING_POOL_SIZE = 1 << 25;
+
+    // The raw node table, three words per node: type << 24 | name offset, then parent and end index for directories,
+    // or data offset and size for files
+    private final int[] table;
+    // Only directories store their parent, so this is filled in for every node while validating
+    final int[] parents;
+    final byte[] names;
+
+    private U8NodeTable(int[] table, int[] parents, byte[] names) {
+        this.table = table;
+        this.parents = parents;
+        this.names = names;
+    }
+
+    /**
+     * Checks the tree size from the header and the node count from the root node against {@code limits}. This must
+     * pass before the tree is allocated.
+     */
+    static void checkTreeSize(int treeLen, int nodeCount, U8Limits limits) throws IOException {
+        if (treeLen < NODE_SIZE) {
+            throw new IOException("U8 tree too small: " + treeLen + " bytes");
+        }
+        if (nodeCount <= 0 || nodeCount > treeLen / NODE_SIZE) {
+            throw new IOException("Invalid node count: " + nodeCount);
+        }
+        if (nodeCount > limits.maxNodes()) {
+            throw new IOException("U8 archive has " + nodeCount + " nodes, more than the limit of " + limits.maxNodes());
+        }
+        final int poolSize = treeLen - nodeCount * NODE_SIZE;
+        if (poolSize > MAX_STRING_POOL_SIZE) {
+            throw new IOException("U8 string pool is " + poolSize + " bytes, more than any name offset can reach");
+        }
+        if (poolSize > limits.maxStringPoolSize()) {
+            throw new IOException(
+                "U8 string pool is " + poolSize + " bytes, more than the limit of " + limits.maxStringPoolSize()
+            );
+        }
+    }
+
+    /**
+     * Reads and validates the node table and string pool.
+     *
+     * @param tree The whole tree section, from the first node to the end of the string pool
+     * @param archiveSize The size of the whole archive if known, or -1, to check that file data lies within it
+     */
+    static U8NodeTable read(ByteBuffer tree, U8Limits limits, long archiveSize) throws IOException {
+        final int treeLen = tree.remaining();
+        final int nodeCount = treeLen >= NODE_SIZE ? tree.getInt(tree.position() + 8) : 0;
+        checkTreeSize(treeLen, nodeCount, limits);
+
+        final int[] table = new int[nodeCount * NODE_INTS];
+        tree.duplicate().asIntBuffer().get(table);
+        final byte[] names = new byte[treeLen - nodeCount * NODE_SIZE];
+        tree.get(tree.position() + nodeCount * NODE_SIZE, names);
+        final U8NodeTable result = new U8NodeTable(table, new int[nodeCount], names);
+        result.validate(limits, archiveSize);
+        return result;
+    }
+
+    /**
+     * Walks the table once, without recursion, checking the structure, depth and file data ranges.
+     */
+    private void validate(U8Limits limits, long archiveSize) throws IOException {
+        final int nodeCount = parents.length;
+        long dataSize = 0;
+        if (!isDirectory(0)) {
+            throw new IOException("Root node not a DirectoryNode!");
+        }
+        checkName(0);
+        int[] openDirs = new int[16];
+        int depth = 0;
+        for (int index = 1; index < nodeCount; index++) {
+            while (index >= endIndex(openDirs[depth])) {
+                depth--;
+            }
+            final int parent = openDirs[depth];
+            parents[index] = parent;
+            checkName(index);
+            if (depth >= limits.maxDepth()) {
+                throw new IOException("U8 archive is nested deeper than the limit of " + limits.maxDepth());
+            }
+            if (!isDirectory(index)) {
+                final int offset = dataOffset(index);
+                final int size = dataSize(index);
+                if (offset < 0 || size < 0 || archiveSize >= 0 && (long)offset + size > archiveSize) {
+                    throw new IOException(
+                        "Invalid data range for node " + index + ": 0x" + Integer.toHexString(offset) + " + " + size
+                    );
+                }
+                dataSize += size;
+                if (dataSize > limits.maxDataSize()) {
+                    throw new IOException("U8 file data is larger than the limit of " + limits.maxDataSize() + " bytes");
+                }
+                continue;
+            }
+
+            final int parentNodeIndex = table[index * NODE_INTS + 1];
+            if (parentNodeIndex < 0 || parentNodeIndex >= nodeCount) {
+                throw new IOException("Invalid parentNodeIndex (out of bounds): " + parentNodeIndex);
+            }
+            if (!isDirectory(parentNodeIndex)) {
+                throw new IOException("Invalid parentNodeIndex: parent node isn't a directory");
+            }
+            final int siblingNodeIndex = endIndex(index);
+            if (siblingNodeIndex <= index || siblingNodeIndex > endIndex(parent)) {
+                throw new IOException("Invalid siblingNodeIndex (out of bounds): " + siblingNodeIndex);
+            }
+            if (++depth == openDirs.length) {
+                openDirs = Arrays.copyOf(openDirs, depth * 2);
+            }
+            openDirs[depth] = index;
+        }
+    }
+
+    private void checkName(int index) throws IOException {
+        final int nameOffset = nameOffset(index);
+        if (nameOffset >= names.length) {
+            throw new IOException("Invalid name offset (out of bounds): " + nameOffset);
+        }
+    }
+
+    int size() {
+        return parents.length;
+    }
+
+    boolean isDirectory(int index) {
+        return table[index * NODE_INTS] >>> 24 != 0;
+    }
+
+    int nameOffset(int index) {
+        return table[index * NODE_INTS] & 0xffffff;
+    }
+
+    int nameEnd(int nameOffset) {
+        int end = nameOffset;
+        while (end < names.length && names[end] != 0) {
+            end++;
+        }
+        return end;
+    }
+
+    String readName(int index) {
+        final int nameOffset = nameOffset(index);
+        return new String(names, nameOffset, nameEnd(nameOffset) - nameOffset, StandardCharsets.US_ASCII);
+    }
+
+    boolean nameEquals(int index, String name) {
+        final int nameOffset = nameOffset(index);
+        final int length = name.length();
+        if (nameOffset + length > names.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (names[nameOffset + i] != name.charAt(i)) {
+                return false;
+            }
+        }
+        return nameOffset + length == names.length || names[nameOffset + length] == 0;
+    }
+
+    /**
+     * @return Index of the node after the directory at {@code index} and all its descendants
+     */
+    int endIndex(int index) {
+        return table[index * NODE_INTS + 2];
+    }
+
+    /**
+     * @return Index of the node after {@code index} and all its descendants
+     */
+    int nextSibling(int index) {
+        return isDirectory(index) ? endIndex(index) : index + 1;
+    }
+
+    int dataOffset(int index) {
+        return table[index * NODE_INTS + 1];
+    }
+
+    int dataSize(int index) {
+        return table[index * NODE_INTS + 2];
+    }
+
+    /**
+     * @return The path of a node relative to the root, such as {@code ./a/b.bin}
+     */
+    String readPath(int index) {
+        if (index == 0) {
+            return readName(0);
+        }
+        final StringBuilder result = new StringBuilder(readName(index));
+        for (int current = parents[index]; current != 0; current = parents[current]) {
+            result.insert(0, '/').insert(0, readName(current));
+        }
+        return result.toString();
+    }
+}
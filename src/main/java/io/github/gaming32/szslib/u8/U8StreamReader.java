@@ -0,0 +1,124 @@
+package io.github.gaming32.szslib.u8;
+
+import io.github.gaming32.szslib.SzsDetector;
+import io.github.gaming32.szslib.util.EntryStreamer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.FileVisitResult;
+import java.util.Arrays;
+
+/**
+ * Reads U8 archives from a stream that can't seek, in a single pass. The header and node table are read first, then
+ * each file is handed to a {@link Visitor} in the order its data appears in the archive. Only the node table is held
+ * in memory, so this works on the output of a {@link io.github.gaming32.szslib.yaz0.Yaz0StreamingInputStream
+ * Yaz0StreamingInputStream} without ever holding the whole archive.
+ * <p>
+ * Files sharing the exact same data are all visited. The first one reads it straight from the stream, and it's buffered
+ * as it goes so that it can be replayed to the others. Only data up to {@link #MAX_REPLAY_SIZE} is buffered; for
+ * larger shared data, reading from the later files' streams throws an {@link IOException}. Files whose data partially
+ * overlaps an earlier file's can't be streamed, and cause an {@link IOException}.
+ */
+public final class U8StreamReader {
+    /**
+     * The largest shared data that's buffered for replay
+     */
+    public static final int MAX_REPLAY_SIZE = EntryStreamer.MAX_REPLAY_SIZE;
+
+    private static final int HEADER_SIZE = 16;
+
+    private U8StreamReader() {
+    }
+
+    /**
+     * Reads the archive from {@code in}, which is left open and positioned after the last file read.
+     *
+     * @return {@code false} if the visitor stopped early with {@link FileVisitResult#TERMINATE}
+     */
+    public static boolean read(InputStream in, Visitor visitor) throws IOException {
+        return read(in, visitor, U8Limits.UNLIMITED);
+    }
+
+    /**
+     * Reads the archive from {@code in}, rejecting it with an {@link IOException} if it exceeds {@code limits}.
+     *
+     * @return {@code false} if the visitor stopped early with {@link FileVisitResult#TERMINATE}
+     */
+    public static boolean read(InputStream in, Visitor visitor, U8Limits limits) throws IOException {
+        final ByteBuffer header = ByteBuffer.wrap(EntryStreamer.readFully(in, HEADER_SIZE, "U8"));
+        if (header.getInt() != SzsDetector.U8_MAGIC) {
+            throw new IOException("Invalid U8 magic");
+        }
+        final int firstNodeOffset = header.getInt();
+        final int treeLen = header.getInt();
+        if (firstNodeOffset < HEADER_SIZE || treeLen < 0) {
+            throw new IOException("Invalid U8 header");
+        }
+        in.skipNBytes(firstNodeOffset - HEADER_SIZE);
+        final byte[] rootNode = EntryStreamer.readFully(in, U8NodeTable.NODE_SIZE, "U8");
+        U8NodeTable.checkTreeSize(treeLen, ByteBuffer.wrap(rootNode).getInt(8), limits);
+        // The node count can still claim a huge table, so the rest is read in growing chunks rather than allocated up
+        // front. A forged header then runs out of input long before it runs out of memory.
+        final byte[] rest = EntryStreamer.readFully(in, treeLen - U8NodeTable.NODE_SIZE, "U8");
+        final byte[] tree = Arrays.copyOf(rootNode, treeLen);
+        System.arraycopy(rest, 0, tree, U8NodeTable.NODE_SIZE, rest.length);
+        final U8NodeTable nodes = U8NodeTable.read(ByteBuffer.wrap(tree), limits, -1);
+        return EntryStreamer.stream(
+            in, (long)firstNodeOffset + treeLen, sortFiles(nodes), nodes::dataOffset, nodes::dataSize, "U8",
+            (index, data) -> visit(nodes, index, data, visitor)
+        );
+    }
+
+    /**
+     * @return The indices of all file nodes, in data order
+     */
+    private static int[] sortFiles(U8NodeTable nodes) throws IOException {
+        int count = 0;
+        for (int i = 0; i < nodes.size(); i++) {
+            if (!nodes.isDirectory(i)) {
+                count++;
+            }
+        }
+        final long[] files = new long[count];
+        count = 0;
+        for (int i = 0; i < nodes.size(); i++) {
+            if (nodes.isDirectory(i)) continue;
+            final int offset = nodes.dataOffset(i);
+            if (offset < 0 || nodes.dataSize(i) < 0) {
+                throw new IOException("Invalid data range for node " + i);
+            }
+            files[count++] = (long)offset << 32 | i;
+        }
+        Arrays.sort(files);
+        final int[] result = new int[files.length];
+        for (int i = 0; i < files.length; i++) {
+            result[i] = (int)files[i];
+        }
+        return result;
+    }
+
+    /**
+     * @return Whether to stop
+     */
+    private static boolean visit(U8NodeTable nodes, int index, InputStream data, Visitor visitor) throws IOException {
+        final Entry entry = new Entry(nodes.readPath(index), nodes.dataOffset(index), nodes.dataSize(index));
+        return visitor.visitFile(entry, data) == FileVisitResult.TERMINATE;
+    }
+
+    /**
+     * @param path The path relative to the root, in the same form accepted by {@link U8File#getNode(String)}
+     */
+    public record Entry(String path, int dataOffset, int size) {
+    }
+
+    @FunctionalInterface
+    public interface Visitor {
+        /**
+         * @param data The file's data. It's only valid during this call, and closing it does nothing. Any of it left
+         * unread is skipped.
+         * @return {@link FileVisitResult#TERMINATE} to stop reading; anything else continues
+         */
+        FileVisitResult visitFile(Entry entry, InputStream data) throws IOException;
+    }
+}
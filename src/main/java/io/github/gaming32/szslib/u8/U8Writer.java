@@ -0,0 +1,336 @@
+package io.github.gaming32.szslib.u8;
+
+import io.github.gaming32.szslib.SzsDetector;
+import io.github.gaming32.szslib.decompressed.DecompressedSzsFile;
+import io.github.gaming32.szslib.util.ChannelIO;
+import io.github.gaming32.szslib.util.Deduplicator;
+import io.github.gaming32.szslib.util.EntrySource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds U8 archives. Entries are collected as a tree of sources, and file data is only read when the archive is
+ * written, in a single pass straight to the output. Children are written in the order they were added.
+ * <p>
+ * With {@link #setDeduplicate deduplication} on, files with identical content share a single copy of their data.
+ * <p>
+ * To write a compressed archive, pass a {@link io.github.gaming32.szslib.yaz0.Yaz0OutputStream Yaz0OutputStream} to
+ * {@link #write(OutputStream)}.
+ *
+ * @apiNote Thread-safety: {@link U8Writer} is not thread-safe.
+ */
+public final class U8Writer {
+    public static final int DEFAULT_ALIGNMENT = 0x20;
+
+    private static final int HEADER_SIZE = 0x20;
+    private static final int NODE_SIZE = 12;
+    private static final int MAX_NAME_OFFSET = 1 << 24;
+    private static final int COPY_BUFFER_SIZE = 0x10000;
+    private static final byte RESERVED_FILL = (byte)0xcc;
+
+    private final Directory root = new Directory("");
+    private int alignment = DEFAULT_ALIGNMENT;
+    private boolean deduplicate;
+    private long bytesSaved;
+
+    public int getAlignment() {
+        return alignment;
+    }
+
+    /**
+     * Sets the alignment of the data section and of each file in it, relative to the start of the archive.
+     */
+    public U8Writer setAlignment(int alignment) {
+        if (alignment <= 0) {
+            throw new IllegalArgumentException("alignment <= 0");
+        }
+        this.alignment = alignment;
+        return this;
+    }
+
+    public boolean isDeduplicate() {
+        return deduplicate;
+    }
+
+    /**
+     * Sets whether files with identical content are stored once, with all of their nodes pointing at the same data.
+     * Finding them reads every file whose size matches another's before the archive is written, so those sources are
+     * read twice. Files added from a {@link ReadableByteChannel} can only be read once, and are never merged.
+     */
+    public U8Writer setDeduplicate(boolean deduplicate) {
+        this.deduplicate = deduplicate;
+        return this;
+    }
+
+    /**
+     * @return The number of bytes of file data that the last {@code write} stored once instead of repeating
+     */
+    public long getBytesSaved() {
+        return bytesSaved;
+    }
+
+    /**
+     * Adds a directory and any missing parents. Adding a directory that already exists does nothing.
+     */
+    public U8Writer addDirectory(String path) {
+        final String[] parts = splitPath(path);
+        Directory dir = root;
+        for (final String part : parts) {
+            dir = dir.directory(part);
+        }
+        return this;
+    }
+
+    public U8Writer addFile(String path, byte[] data) {
+        return addFile(path, ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Adds the remaining content of {@code data}. The buffer isn't copied, so it must not be modified until the
+     * archive is written.
+     */
+    public U8Writer addFile(String path, ByteBuffer data) {
+        return addFile(path, EntrySource.of(data));
+    }
+
+    /**
+     * Adds a file from disk. Its size is taken now, and its content is copied when the archive is written.
+     */
+    public U8Writer addFile(String path, Path file) throws IOException {
+        return addFile(path, EntrySource.of(file, "U8"));
+    }
+
+    /**
+     * Adds a file that is read from {@code channel} when the archive is written. Exactly {@code size} bytes are read
+     * from its position at that time. The channel isn't closed.
+     */
+    public U8Writer addFile(String path, ReadableByteChannel channel, int size) {
+        return addFile(path, EntrySource.of(channel, size));
+    }
+
+    /**
+     * Adds a file from another archive, such as a {@link U8File} that stays open until this archive is written.
+     */
+    public U8Writer addFile(String path, DecompressedSzsFile.FileNode node) {
+        return addFile(path, EntrySource.of(node));
+    }
+
+    /**
+     * Adds every file and directory under {@code dir} below {@code path}.
+     */
+    public U8Writer addAll(String path, DecompressedSzsFile.DirectoryNode dir) {
+        final String prefix = path.isEmpty() || path.endsWith("/") ? path : path + "/";
+        addDirectory(path);
+        for (final DecompressedSzsFile.TreeNode child : dir.getChildren().values()) {
+            if (child instanceof DecompressedSzsFile.DirectoryNode subdir) {
+                addAll(prefix + child.getName(), subdir);
+            } else if (child instanceof DecompressedSzsFile.FileNode file) {
+                addFile(prefix + child.getName(), file);
+            }
+        }
+        return this;
+    }
+
+    private U8Writer addFile(String path, EntrySource source) {
+        final String[] parts = splitPath(path);
+        if (parts.length == 0) {
+            throw new IllegalArgumentException("Missing file name: " + path);
+        }
+        Directory dir = root;
+        for (int i = 0; i < parts.length - 1; i++) {
+            dir = dir.directory(parts[i]);
+        }
+        final String name = parts[parts.length - 1];
+        if (dir.children.putIfAbsent(name, new File(name, source)) != null) {
+            throw new IllegalArgumentException("Duplicate entry: " + path);
+        }
+        return this;
+    }
+
+    public long write(Path path) throws IOException {
+        try (FileChannel out = FileChannel.open(
+            path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING
+        )) {
+            return write(out);
+        }
+    }
+
+    /**
+     * Writes the archive to {@code out}, which is left open.
+     */
+    public long write(OutputStream out) throws IOException {
+        final long written = write(Channels.newChannel(out));
+        out.flush();
+        return written;
+    }
+
+    /**
+     * Writes the archive to {@code out}, which is left open.
+     *
+     * @return The number of bytes written
+     */
+    public long write(WritableByteChannel out) throws IOException {
+        final List<Entry> nodes = new ArrayList<>();
+        root.flatten(nodes, 0);
+
+        final ByteBuffer names = layoutNames(nodes);
+        final int treeSize = nodes.size() * NODE_SIZE + names.remaining();
+        final long dataStart = align(HEADER_SIZE + (long)treeSize);
+        final File[] files = nodes.stream().filter(File.class::isInstance).toArray(File[]::new);
+        final int[] sameAs = deduplicate ? findDuplicates(files) : null;
+        long end = dataStart;
+        long saved = 0;
+        for (int i = 0; i < files.length; i++) {
+            final File file = files[i];
+            file.duplicate = sameAs != null && sameAs[i] != i;
+            if (file.duplicate) {
+                file.dataOffset = files[sameAs[i]].dataOffset;
+                saved += file.source.size();
+                continue;
+            }
+            file.dataOffset = align(end);
+            end = file.dataOffset + file.source.size();
+        }
+        bytesSaved = saved;
+        if (end > Integer.MAX_VALUE) {
+            throw new IOException("U8 archive too large: " + end + " bytes");
+        }
+
+        final ByteBuffer header = ByteBuffer.allocate((int)dataStart);
+        header.putInt(SzsDetector.U8_MAGIC)
+            .putInt(HEADER_SIZE)
+            .putInt(treeSize)
+            .putInt((int)dataStart);
+        while (header.position() < HEADER_SIZE) {
+            header.put(RESERVED_FILL);
+        }
+        for (final Entry node : nodes) {
+            if (node instanceof Directory dir) {
+                header.putInt(1 << 24 | dir.nameOffset).putInt(dir.parentIndex).putInt(dir.endIndex);
+            } else if (node instanceof File file) {
+                header.putInt(file.nameOffset).putInt((int)file.dataOffset).putInt(file.source.size());
+            }
+        }
+        header.put(names);
+        ChannelIO.writeFully(out, header.clear());
+
+        final ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+        long position = dataStart;
+        for (final File file : files) {
+            if (file.duplicate) continue;
+            ChannelIO.writeZeros(out, file.dataOffset - position, buffer);
+            file.source.writeTo(out, buffer);
+            position = file.dataOffset + file.source.size();
+        }
+        return position;
+    }
+
+    private static int[] findDuplicates(File[] files) throws IOException {
+        final int[] sizes = new int[files.length];
+        for (int i = 0; i < files.length; i++) {
+            sizes[i] = files[i].source.isRepeatable() ? files[i].source.size() : -1;
+        }
+        return Deduplicator.find(sizes, (index, out, buffer) -> files[index].source.writeTo(out, buffer));
+    }
+
+    private ByteBuffer layoutNames(List<Entry> nodes) throws IOException {
+        int size = 0;
+        for (final Entry node : nodes) {
+            node.nameOffset = size;
+            size += node.encodedName.length + 1;
+        }
+        if (nodes.get(nodes.size() - 1).nameOffset >= MAX_NAME_OFFSET) {
+            throw new IOException("U8 string pool too large: " + size + " bytes");
+        }
+        final ByteBuffer names = ByteBuffer.allocate(size);
+        for (final Entry node : nodes) {
+            names.put(node.encodedName).put((byte)0);
+        }
+        return names.flip();
+    }
+
+    private long align(long offset) {
+        final long rem = offset % alignment;
+        return rem == 0 ? offset : offset + alignment - rem;
+    }
+
+    private static String[] splitPath(String path) {
+        final List<String> parts = new ArrayList<>();
+        for (final String part : path.split("/")) {
+            if (part.isEmpty()) continue;
+            for (int i = 0; i < part.length(); i++) {
+                final char c = part.charAt(i);
+                if (c == 0 || c > 0x7f) {
+                    throw new IllegalArgumentException("Invalid character in U8 name " + part + ": 0x" + Integer.toHexString(c));
+                }
+            }
+            parts.add(part);
+        }
+        return parts.toArray(String[]::new);
+    }
+
+    private abstract static sealed class Entry permits Directory, File {
+        final byte[] encodedName;
+        int nameOffset;
+
+        Entry(String name) {
+            encodedName = name.getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private static final class Directory extends Entry {
+        final Map<String, Entry> children = new LinkedHashMap<>();
+        int parentIndex;
+        int endIndex;
+
+        Directory(String name) {
+            super(name);
+        }
+
+        Directory directory(String name) {
+            final Entry existing = children.computeIfAbsent(name, Directory::new);
+            if (!(existing instanceof Directory dir)) {
+                throw new IllegalArgumentException("Not a directory: " + name);
+            }
+            return dir;
+        }
+
+        void flatten(List<Entry> nodes, int parentIndex) {
+            final int index = nodes.size();
+            this.parentIndex = parentIndex;
+            nodes.add(this);
+            for (final Entry child : children.values()) {
+                if (child instanceof Directory dir) {
+                    dir.flatten(nodes, index);
+                } else {
+                    nodes.add(child);
+                }
+            }
+            endIndex = nodes.size();
+        }
+    }
+
+    private static final class File extends Entry {
+        final EntrySource source;
+        long dataOffset;
+        boolean duplicate;
+
+        File(String name, EntrySource source) {
+            super(name);
+            this.source = source;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package io.github.gaming32.szslib.util;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * A read-only {@link SeekableByteChannel} over the remaining bytes of a {@link ByteBuffer}, which can be a heap,
+ * direct, or mapped buffer. The buffer is not copied.
+ */
+public final class ByteBufferChannel implements SeekableByteChannel {
+    private final ByteBuffer buffer;
+    private boolean closed;
+    private long position;
+
+    public ByteBufferChannel(ByteBuffer buffer) {
+        this.buffer = buffer.slice();
+    }
+
+    public ByteBuffer getBuffer() {
+        return buffer.asReadOnlyBuffer();
+    }
+
+    private void checkClosed() throws ClosedChannelException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws ClosedChannelException {
+        checkClosed();
+        if (position >= buffer.limit()) {
+            return -1;
+        }
+        final int pos = (int)position;
+        final int count = Math.min(dst.remaining(), buffer.limit() - pos);
+        dst.put(dst.position(), buffer, pos, count);
+        dst.position(dst.position() + count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws ClosedChannelException {
+        checkClosed();
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long position() throws ClosedChannelException {
+        checkClosed();
+        return position;
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) throws ClosedChannelException {
+        checkClosed();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("newPosition < 0");
+        }
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws ClosedChannelException {
+        checkClosed();
+        return buffer.limit();
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) throws ClosedChannelException {
+        checkClosed();
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
@@ -0,0 +1,77 @@
+package io.github.gaming32.szslib.util;
+
+import org.apache.commons.compress.utils.IOUtils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Channel helpers shared by the archive writers.
+ */
+public final class ChannelIO {
+    private ChannelIO() {
+    }
+
+    /**
+     * Copies exactly {@code size} bytes from {@code in} to {@code out}. A {@link FileChannel} is copied with
+     * {@link FileChannel#transferTo}, and anything else through {@code buffer}.
+     *
+     * @throws EOFException If {@code in} ends first
+     */
+    public static void copy(ReadableByteChannel in, int size, WritableByteChannel out, ByteBuffer buffer) throws IOException {
+        if (in instanceof FileChannel file) {
+            final long start = file.position();
+            long done = 0;
+            while (done < size) {
+                final long transferred = file.transferTo(start + done, size - done, out);
+                if (transferred <= 0) {
+                    throw new EOFException("Source ended after " + done + " of " + size + " bytes");
+                }
+                done += transferred;
+            }
+            file.position(start + size);
+            return;
+        }
+        int remaining = size;
+        while (remaining > 0) {
+            buffer.clear().limit(Math.min(remaining, buffer.capacity()));
+            final int read = in.read(buffer);
+            if (read < 0) {
+                throw new EOFException("Source ended after " + (size - remaining) + " of " + size + " bytes");
+            }
+            remaining -= read;
+            writeFully(out, buffer.flip());
+        }
+    }
+
+    /**
+     * Reads exactly {@code size} bytes from {@code in} into a new buffer, ready for reading.
+     */
+    public static ByteBuffer readFully(ReadableByteChannel in, int size) throws IOException {
+        final ByteBuffer result = ByteBuffer.allocate(size);
+        IOUtils.readFully(in, result);
+        return result.flip();
+    }
+
+    public static void writeZeros(WritableByteChannel out, long count, ByteBuffer buffer) throws IOException {
+        while (count > 0) {
+            final int chunk = (int)Math.min(count, buffer.capacity());
+            buffer.clear();
+            for (int i = 0; i < chunk; i++) {
+                buffer.put((byte)0);
+            }
+            writeFully(out, buffer.flip());
+            count -= chunk;
+        }
+    }
+
+    public static void writeFully(WritableByteChannel out, ByteBuffer src) throws IOException {
+        while (src.hasRemaining()) {
+            out.write(src);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package io.github.gaming32.szslib.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Finds archive entries with identical content, so that writers can store each payload once. Only entries whose size
+ * matches another entry's are read, and those are hashed with SHA-256 in parallel on the
+ * {@link java.util.concurrent.ForkJoinPool#commonPool() common pool}.
+ */
+public final class Deduplicator {
+    private static final int MAX_BUFFER_SIZE = 0x10000;
+
+    private Deduplicator() {
+    }
+
+    /**
+     * @param sizes The size of each entry, or {@code -1} for entries that can't be read more than once, which are never
+     * merged. Empty entries are never merged either.
+     * @param contents Writes the content of an entry. This is called from several threads at once.
+     * @return For each entry, the index of the first entry with the same content. Entries with unique content map to
+     * themselves.
+     */
+    public static int[] find(int[] sizes, ContentSource contents) throws IOException {
+        final int[] result = new int[sizes.length];
+        final Map<Integer, Integer> sizeCounts = new HashMap<>();
+        for (int i = 0; i < sizes.length; i++) {
+            result[i] = i;
+            if (sizes[i] > 0) {
+                sizeCounts.merge(sizes[i], 1, Integer::sum);
+            }
+        }
+
+        final byte[][] digests = new byte[sizes.length][];
+        try {
+            IntStream.range(0, sizes.length)
+                .filter(i -> sizes[i] > 0 && sizeCounts.get(sizes[i]) > 1)
+                .parallel()
+                .forEach(i -> {
+                    try {
+                        digests[i] = digest(i, sizes[i], contents);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        final Map<ByteBuffer, Integer> firsts = new HashMap<>();
+        for (int i = 0; i < sizes.length; i++) {
+            if (digests[i] == null) continue;
+            // The digest is keyed together with the size, so that equal digests of different lengths can't merge
+            final ByteBuffer key = ByteBuffer.allocate(4 + digests[i].length).putInt(sizes[i]).put(digests[i]).flip();
+            final Integer first = firsts.putIfAbsent(key, i);
+            if (first != null) {
+                result[i] = first;
+            }
+        }
+        return result;
+    }
+
+    private static byte[] digest(int index, int size, ContentSource contents) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        contents.writeTo(index, new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) {
+                final int count = src.remaining();
+                digest.update(src);
+                return count;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        }, ByteBuffer.allocate(Math.min(size, MAX_BUFFER_SIZE)));
+        return digest.digest();
+    }
+
+    @FunctionalInterface
+    public interface ContentSource {
+        /**
+         * Writes the content of entry {@code index} to {@code out}.
+         *
+         * @param buffer Scratch space for this call only
+         */
+        void writeTo(int index, WritableByteChannel out, ByteBuffer buffer) throws IOException;
+    }
+}
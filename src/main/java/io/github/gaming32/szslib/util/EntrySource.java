@@ -0,0 +1,145 @@
+package io.github.gaming32.szslib.util;
+
+import io.github.gaming32.szslib.decompressed.DecompressedSzsFile;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The content of a file added to an archive writer. Nothing is read until the archive is written.
+ */
+public abstract class EntrySource {
+    private final int size;
+
+    private EntrySource(int size) {
+        this.size = size;
+    }
+
+    /**
+     * The remaining content of {@code data}. The buffer isn't copied.
+     */
+    public static EntrySource of(ByteBuffer data) {
+        final ByteBuffer slice = data.slice();
+        return new EntrySource(slice.remaining()) {
+            @Override
+            public boolean isLoaded() {
+                return true;
+            }
+
+            @Override
+            public ByteBuffer read() {
+                return slice.duplicate();
+            }
+        };
+    }
+
+    /**
+     * A file on disk. Its size is taken now.
+     *
+     * @param format The archive format, for the error if the file is too large
+     */
+    public static EntrySource of(Path file, String format) throws IOException {
+        final long size = Files.size(file);
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("File too large for " + format + ": " + size + " bytes");
+        }
+        return new EntrySource((int)size) {
+            @Override
+            public ByteBuffer read() throws IOException {
+                try (SeekableByteChannel in = Files.newByteChannel(file, StandardOpenOption.READ)) {
+                    return ChannelIO.readFully(in, size());
+                }
+            }
+
+            @Override
+            public void writeTo(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+                try (SeekableByteChannel in = Files.newByteChannel(file, StandardOpenOption.READ)) {
+                    ChannelIO.copy(in, size(), out, buffer);
+                }
+            }
+        };
+    }
+
+    /**
+     * A file in another archive, which must stay open until the archive is written.
+     */
+    public static EntrySource of(DecompressedSzsFile.FileNode node) {
+        return new EntrySource(node.getSize()) {
+            @Override
+            public ByteBuffer read() throws IOException {
+                try (SeekableByteChannel in = node.openChannel()) {
+                    return ChannelIO.readFully(in, size());
+                }
+            }
+
+            @Override
+            public void writeTo(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+                try (SeekableByteChannel in = node.openChannel()) {
+                    ChannelIO.copy(in, size(), out, buffer);
+                }
+            }
+        };
+    }
+
+    /**
+     * Exactly {@code size} bytes read from {@code channel}, starting at its position when the archive is written. This
+     * can only be read once.
+     */
+    public static EntrySource of(ReadableByteChannel channel, int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("size < 0");
+        }
+        return new EntrySource(size) {
+            @Override
+            public boolean isRepeatable() {
+                return false;
+            }
+
+            @Override
+            public ByteBuffer read() throws IOException {
+                return ChannelIO.readFully(channel, size);
+            }
+
+            @Override
+            public void writeTo(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+                ChannelIO.copy(channel, size, out, buffer);
+            }
+        };
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Whether {@link #read} and {@link #writeTo} can be called more than once, possibly from different threads
+     */
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    /**
+     * @return Whether {@link #read} returns data that's already in memory
+     */
+    public boolean isLoaded() {
+        return false;
+    }
+
+    /**
+     * Reads the whole content into a buffer.
+     */
+    public abstract ByteBuffer read() throws IOException;
+
+    /**
+     * @param buffer Scratch space, which may be shared with other sources
+     */
+    public void writeTo(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+        ChannelIO.writeFully(out, read());
+    }
+}
@@ -0,0 +1,194 @@
+package io.github.gaming32.szslib.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.IntToLongFunction;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * The single pass shared by the stream readers. Once a reader has parsed its tables, this hands each entry's data to it
+ * straight from the stream, in data order.
+ * <p>
+ * Entries sharing the exact same data are all visited. The first one reads it straight from the stream, and it's
+ * buffered as it goes so that it can be replayed to the others. Only data up to {@link #MAX_REPLAY_SIZE} is buffered;
+ * for larger shared data, reading from the later entries' streams throws an {@link IOException}. Entries whose data
+ * partially overlaps an earlier entry's can't be streamed, and cause an {@link IOException}.
+ */
+public final class EntryStreamer {
+    /**
+     * The largest shared data that's buffered for replay
+     */
+    public static final int MAX_REPLAY_SIZE = 0x1000000;
+
+    private EntryStreamer() {
+    }
+
+    /**
+     * Streams the data of {@code entries} from {@code in}.
+     *
+     * @param position The offset {@code in} is at
+     * @param entries The entries to visit, sorted by data offset
+     * @param offset The offset of an entry's data in the archive
+     * @param size The size of an entry's data
+     * @param format The archive format, for error messages
+     * @return {@code false} if the visitor stopped early
+     */
+    public static boolean stream(
+        InputStream in, long position, int[] entries, IntToLongFunction offset, IntUnaryOperator size, String format,
+        Visitor visitor
+    ) throws IOException {
+        for (int i = 0; i < entries.length; ) {
+            final int entry = entries[i];
+            final long begin = offset.applyAsLong(entry);
+            final int length = size.applyAsInt(entry);
+            int groupEnd = i + 1;
+            while (
+                groupEnd < entries.length &&
+                offset.applyAsLong(entries[groupEnd]) == begin &&
+                size.applyAsInt(entries[groupEnd]) == length
+            ) {
+                groupEnd++;
+            }
+
+            if (length == 0) {
+                for (; i < groupEnd; i++) {
+                    if (visitor.visit(entries[i], InputStream.nullInputStream())) {
+                        return false;
+                    }
+                }
+                continue;
+            }
+            if (begin < position) {
+                throw new IOException(
+                    format + " data at 0x" + Long.toHexString(begin) + " overlaps earlier data, so it can't be streamed"
+                );
+            }
+            in.skipNBytes(begin - position);
+            position = begin + length;
+
+            // The first entry reads straight from the stream, and the data is kept for any others sharing it
+            final byte[] shared = groupEnd - i > 1 && length <= MAX_REPLAY_SIZE ? new byte[length] : null;
+            final BoundedInputStream data = new BoundedInputStream(in, length, shared, format);
+            if (visitor.visit(entry, data)) {
+                return false;
+            }
+            data.skipNBytes(data.remaining);
+            for (i++; i < groupEnd; i++) {
+                final InputStream replay = shared != null
+                    ? new ByteArrayInputStream(shared)
+                    : tooLargeToReplay(length, format);
+                if (visitor.visit(entries[i], replay)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads exactly {@code length} bytes, reading in growing chunks so that a forged length runs out of input long
+     * before it runs out of memory.
+     *
+     * @param format The archive format, for the error if {@code in} ends first
+     */
+    public static byte[] readFully(InputStream in, int length, String format) throws IOException {
+        final byte[] result = in.readNBytes(length);
+        if (result.length != length) {
+            throw new EOFException(format + " archive ended early");
+        }
+        return result;
+    }
+
+    private static InputStream tooLargeToReplay(int size, String format) {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Shared " + format + " data of " + size + " bytes is too large to replay");
+            }
+        };
+    }
+
+    @FunctionalInterface
+    public interface Visitor {
+        /**
+         * @param entry The entry, as given to {@link #stream}
+         * @param data The entry's data. It's only valid during this call, and closing it does nothing. Any of it left
+         * unread is skipped.
+         * @return Whether to stop
+         */
+        boolean visit(int entry, InputStream data) throws IOException;
+    }
+
+    private static final class BoundedInputStream extends InputStream {
+        private final InputStream in;
+        private int remaining;
+        // If set, everything read is also copied into this, which is exactly the bounded size
+        private final byte[] copy;
+        private final String format;
+
+        BoundedInputStream(InputStream in, int remaining, byte[] copy, String format) {
+            this.in = in;
+            this.remaining = remaining;
+            this.copy = copy;
+            this.format = format;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining == 0) {
+                return -1;
+            }
+            final int result = in.read();
+            if (result < 0) {
+                throw new EOFException(format + " archive ended early");
+            }
+            if (copy != null) {
+                copy[copy.length - remaining] = (byte)result;
+            }
+            remaining--;
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (remaining == 0) {
+                return -1;
+            }
+            final int read = in.read(b, off, Math.min(len, remaining));
+            if (read < 0) {
+                throw new EOFException(format + " archive ended early");
+            }
+            if (copy != null) {
+                System.arraycopy(b, off, copy, copy.length - remaining, read);
+            }
+            remaining -= read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            if (copy != null) {
+                // Skipped data still has to be kept
+                final int count = (int)Math.min(n, remaining);
+                return count > 0 ? Math.max(read(copy, copy.length - remaining, count), 0) : 0;
+            }
+            final long skipped = in.skip(Math.min(n, remaining));
+            remaining -= (int)skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return Math.min(in.available(), remaining);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package io.github.gaming32.szslib.util;
+
+import io.github.gaming32.szslib.yaz0.Yaz0LazyChannel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Reads from an archive at an absolute position, without disturbing anyone else's position. This is what archive
+ * readers use to read several entries at once.
+ */
+@FunctionalInterface
+public interface PositionalReader {
+    /**
+     * Reads into {@code dst} starting at {@code position}, like {@link FileChannel#read(ByteBuffer, long)}.
+     */
+    int read(ByteBuffer dst, long position) throws IOException;
+
+    /**
+     * Returns a reader for {@code channel}. A {@link FileChannel} or {@link Yaz0LazyChannel} already supports
+     * positional reads, so it's used without a lock. Other channels have to be repositioned before each read, so they're
+     * read under a lock.
+     */
+    static PositionalReader of(SeekableByteChannel channel) {
+        if (channel instanceof FileChannel fileChannel) {
+            return fileChannel::read;
+        }
+        if (channel instanceof Yaz0LazyChannel lazyChannel) {
+            return lazyChannel::read;
+        }
+        final Lock lock = new ReentrantLock();
+        return (dst, position) -> {
+            lock.lock();
+            try {
+                return channel.position(position).read(dst);
+            } finally {
+                lock.unlock();
+            }
+        };
+    }
+
+    /**
+     * Opens a read-only channel over {@code size} bytes starting at {@code offset}. The channel closes itself once
+     * {@code open} returns {@code false}, which is how it notices that its archive was closed.
+     */
+    default SeekableByteChannel openRange(long offset, int size, BooleanSupplier open) {
+        return new RangeChannel(this, offset, size, open);
+    }
+
+    final class RangeChannel implements SeekableByteChannel {
+        private final PositionalReader reader;
+        private final long offset;
+        private final int size;
+        private final BooleanSupplier open;
+        private boolean closed;
+        private long position;
+
+        private RangeChannel(PositionalReader reader, long offset, int size, BooleanSupplier open) {
+            this.reader = reader;
+            this.offset = offset;
+            this.size = size;
+            this.open = open;
+        }
+
+        private void checkClosed() throws ClosedChannelException {
+            if (!isOpen()) {
+                throw new ClosedChannelException();
+            }
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            checkClosed();
+            if (position >= size) {
+                return -1;
+            }
+            int limit = -1;
+            if (dst.remaining() > remaining()) {
+                limit = dst.limit();
+                dst.limit(dst.position() + remaining());
+            }
+            final int read;
+            try {
+                read = reader.read(dst, offset + position);
+                if (read > 0) {
+                    position += read;
+                }
+            } finally {
+                if (limit != -1) {
+                    dst.limit(limit);
+                }
+            }
+            return read;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws ClosedChannelException {
+            checkClosed();
+            throw new UnsupportedOperationException("write");
+        }
+
+        @Override
+        public long position() throws ClosedChannelException {
+            checkClosed();
+            return position;
+        }
+
+        @Override
+        public SeekableByteChannel position(long newPosition) throws ClosedChannelException {
+            checkClosed();
+            if (newPosition < 0) {
+                throw new IllegalArgumentException("newPosition < 0");
+            }
+            position = newPosition;
+            return this;
+        }
+
+        @Override
+        public long size() throws ClosedChannelException {
+            checkClosed();
+            return size;
+        }
+
+        private int remaining() {
+            if (position >= size) {
+                return 0;
+            }
+            return size - (int)position;
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long size) throws ClosedChannelException {
+            if (size < 0) {
+                throw new IllegalArgumentException("size < 0");
+            }
+            checkClosed();
+            throw new UnsupportedOperationException("truncate");
+        }
+
+        @Override
+        public boolean isOpen() {
+            if (!closed && !open.getAsBoolean()) {
+                closed = true;
+            }
+            return !closed;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package io.github.gaming32.szslib.yaz0;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded lock-free single-producer single-consumer queue of {@code long}s. Each side keeps a cached copy of the
+ * other side's counter and only rereads it when the queue looks full or empty. Writes are published in batches with
+ * {@link #flush}.
+ */
+final class SpscLongQueue {
+    private static final int SPIN_LIMIT = 100;
+    private static final int YIELD_LIMIT = 1000;
+
+    private final long[] buffer;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    private volatile boolean finished;
+    private volatile boolean cancelled;
+
+    // Producer side
+    private long producerTail;
+    private long cachedHead;
+
+    // Consumer side
+    private long consumerHead;
+    private long cachedTail;
+
+    SpscLongQueue(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity not a power of two: " + capacity);
+        }
+        buffer = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Adds {@code value}, waiting while the queue is full. Not visible to the consumer until the next {@link #flush}.
+     * @return {@code false} if the consumer has {@link #cancel cancelled}
+     */
+    boolean offer(long value) {
+        if (producerTail - cachedHead >= buffer.length) {
+            flush();
+            int waits = 0;
+            while (producerTail - (cachedHead = head.get()) >= buffer.length) {
+                if (cancelled) {
+                    return false;
+                }
+                waits = backOff(waits);
+            }
+        }
+        buffer[(int)producerTail & mask] = value;
+        producerTail++;
+        return true;
+    }
+
+    void flush() {
+        tail.lazySet(producerTail);
+    }
+
+    /**
+     * Marks the end of the data. Implies {@link #flush}.
+     */
+    void finish() {
+        flush();
+        finished = true;
+    }
+
+    /**
+     * Makes the producer's waiting and future {@link #offer}s fail, for when the consumer gives up early.
+     */
+    void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Waits until at least one value is available.
+     * @return How many values can be read with {@link #get} before calling {@link #advance}, or {@code 0} if the queue
+     * is {@link #finish finished} and empty
+     */
+    int await() {
+        int waits = 0;
+        while (cachedTail == consumerHead) {
+            cachedTail = tail.get();
+            if (cachedTail != consumerHead) break;
+            if (finished) {
+                cachedTail = tail.get();
+                if (cachedTail == consumerHead) {
+                    return 0;
+                }
+                break;
+            }
+            waits = backOff(waits);
+        }
+        return (int)Math.min(cachedTail - consumerHead, buffer.length - ((int)consumerHead & mask));
+    }
+
+    long get(int i) {
+        return buffer[((int)consumerHead + i) & mask];
+    }
+
+    void advance(int count) {
+        consumerHead += count;
+        head.lazySet(consumerHead);
+    }
+
+    private static int backOff(int waits) {
+        if (waits < SPIN_LIMIT) {
+            Thread.onSpinWait();
+        } else if (waits < YIELD_LIMIT) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(10_000);
+        }
+        return waits + 1;
+    }
+}
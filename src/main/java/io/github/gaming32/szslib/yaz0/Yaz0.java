@@ -0,0 +1,37 @@
+package io.github.gaming32.szslib.yaz0;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Pass-through Yaz0 decoding in constant memory. The given streams and channels are left open once decoding is done.
+ */
+public final class Yaz0 {
+    private Yaz0() {
+    }
+
+    /**
+     * @return The number of decoded bytes written to {@code out}
+     */
+    public static long decode(InputStream in, OutputStream out) throws IOException {
+        return new Yaz0StreamingInputStream(in).transferTo(out);
+    }
+
+    /**
+     * @return The number of decoded bytes written to {@code out}
+     */
+    public static long decode(InputStream in, WritableByteChannel out) throws IOException {
+        return new Yaz0StreamingInputStream(in).transferTo(out);
+    }
+
+    /**
+     * @return The number of decoded bytes written to {@code out}
+     */
+    public static long decode(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+        return decode(Channels.newInputStream(in), out);
+    }
+}
@@ -0,0 +1,362 @@
+package io.github.gaming32.szslib.yaz0;
+
+import io.github.gaming32.szslib.SzsDetector;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.function.IntFunction;
+
+/**
+ * Bulk Yaz0 decoder working directly on arrays and buffers. The static methods decode a whole stream in one call,
+ * while instances keep the decode state between calls so that callers can feed the compressed input in pieces.
+ */
+public final class Yaz0Decoder {
+    /**
+     * The most input a single chunk can take, including the group byte in front of it.
+     */
+    static final int MAX_CHUNK_INPUT = 4;
+    private static final int STAGING_SIZE = 8192;
+
+    int inPos;
+    int outPos;
+    private int group;
+    private int groupLen;
+    private boolean inputEnded;
+
+    Yaz0Decoder(int inPos, int outPos) {
+        this.inPos = inPos;
+        this.outPos = outPos;
+    }
+
+    Yaz0Decoder(int inPos, int outPos, int group, int groupLen) {
+        this(inPos, outPos);
+        this.group = group;
+        this.groupLen = groupLen;
+    }
+
+    int getGroup() {
+        return group;
+    }
+
+    int getGroupLen() {
+        return groupLen;
+    }
+
+    public static int getUncompressedSize(byte[] src, int off) throws IOException {
+        Objects.checkFromIndexSize(off, Yaz0Encoder.HEADER_SIZE, src.length);
+        if (readInt(src, off) != SzsDetector.YAZ0_MAGIC) {
+            throw new IOException("Invalid Yaz0 magic");
+        }
+        return readInt(src, off + 4);
+    }
+
+    public static int getUncompressedSize(ByteBuffer src) throws IOException {
+        final int off = src.position();
+        if (src.remaining() < Yaz0Encoder.HEADER_SIZE) {
+            throw new EOFException("Expected Yaz0 header");
+        }
+        if (readInt(src, off) != SzsDetector.YAZ0_MAGIC) {
+            throw new IOException("Invalid Yaz0 magic");
+        }
+        return readInt(src, off + 4);
+    }
+
+    /**
+     * Reads the 16-byte Yaz0 header from {@code is}.
+     * @return The uncompressed size
+     */
+    static int readHeader(InputStream is) throws IOException {
+        final byte[] header = is.readNBytes(Yaz0Encoder.HEADER_SIZE);
+        if (header.length < Yaz0Encoder.HEADER_SIZE) {
+            throw new EOFException("Expected Yaz0 header");
+        }
+        return getUncompressedSize(header, 0);
+    }
+
+    private static int readInt(byte[] src, int off) {
+        return ((src[off] & 0xff) << 24) | ((src[off + 1] & 0xff) << 16) | ((src[off + 2] & 0xff) << 8) | (src[off + 3] & 0xff);
+    }
+
+    private static int readInt(ByteBuffer src, int off) {
+        return ((src.get(off) & 0xff) << 24) | ((src.get(off + 1) & 0xff) << 16) | ((src.get(off + 2) & 0xff) << 8) | (src.get(off + 3) & 0xff);
+    }
+
+    /**
+     * Decodes a complete Yaz0 file, header included.
+     */
+    public static byte[] decode(byte[] src) throws IOException {
+        final byte[] result = new byte[getUncompressedSize(src, 0)];
+        decode(src, Yaz0Encoder.HEADER_SIZE, result);
+        return result;
+    }
+
+    /**
+     * Decodes the Yaz0 data (without header) starting at {@code src[off]} until {@code dst} is full.
+     * @return The offset in {@code src} just past the consumed data
+     */
+    public static int decode(byte[] src, int off, byte[] dst) throws IOException {
+        return decode(src, off, dst, 0, dst.length);
+    }
+
+    public static int decode(byte[] src, int off, byte[] dst, int dstOff, int dstLen) throws IOException {
+        Objects.checkFromIndexSize(off, 0, src.length);
+        Objects.checkFromIndexSize(dstOff, dstLen, dst.length);
+        final Yaz0Decoder decoder = new Yaz0Decoder(off, dstOff);
+        final int end = dstOff + dstLen;
+        decoder.decode(src, src.length, true, dst, dstOff, end, end);
+        if (decoder.outPos < end) {
+            throw new EOFException("Yaz0 data ended after " + (decoder.outPos - dstOff) + " of " + dstLen + " bytes");
+        }
+        return decoder.inPos;
+    }
+
+    /**
+     * Decodes a complete Yaz0 file, header included, from a memory-mapped view of {@code path}.
+     */
+    public static ByteBuffer decode(Path path) throws IOException {
+        return decode(path, ByteBuffer::allocate);
+    }
+
+    /**
+     * Decodes a complete Yaz0 file, header included, from a memory-mapped view of {@code path} into a buffer obtained
+     * from {@code allocator}. See {@link #decode(ByteBuffer, IntFunction)}.
+     */
+    public static ByteBuffer decode(Path path, IntFunction<ByteBuffer> allocator) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), allocator);
+        }
+    }
+
+    /**
+     * Decodes a complete Yaz0 file, header included, starting at {@code src.position()}. {@code allocator} is called
+     * with the uncompressed size and may return a fresh, pooled, or caller-owned buffer with at least that many bytes
+     * remaining.
+     * @return A slice of the allocated buffer covering exactly the decoded data
+     */
+    public static ByteBuffer decode(ByteBuffer src, IntFunction<ByteBuffer> allocator) throws IOException {
+        final int size = getUncompressedSize(src);
+        final ByteBuffer dst = allocator.apply(size);
+        if (dst.remaining() < size) {
+            throw new IllegalArgumentException("Allocated buffer too small: " + dst.remaining() + " < " + size);
+        }
+        final ByteBuffer result = dst.slice(dst.position(), size);
+        src.position(src.position() + Yaz0Encoder.HEADER_SIZE);
+        decode(src, result.duplicate());
+        return result;
+    }
+
+    /**
+     * Decodes the Yaz0 data (without header) starting at {@code src.position()} until {@code dst} is full. Both
+     * buffers' positions are advanced past the consumed and produced data.
+     */
+    public static void decode(ByteBuffer src, ByteBuffer dst) throws IOException {
+        if (dst.hasArray() && !dst.isReadOnly()) {
+            final int dstStart = dst.arrayOffset() + dst.position();
+            if (src.hasArray()) {
+                final int srcEnd = decode(
+                    src.array(), src.arrayOffset() + src.position(), dst.array(), dstStart, dst.remaining()
+                );
+                src.position(srcEnd - src.arrayOffset());
+            } else {
+                decodeStaged(src, dst.array(), dstStart, dst.remaining());
+            }
+            dst.position(dst.limit());
+            return;
+        }
+        final Yaz0Decoder decoder = new Yaz0Decoder(src.position(), dst.position());
+        decoder.decode(src, src.limit(), dst, dst.position(), dst.limit());
+        if (decoder.outPos < dst.limit()) {
+            throw new EOFException("Yaz0 data ended after " + (decoder.outPos - dst.position()) + " of " + dst.remaining() + " bytes");
+        }
+        src.position(decoder.inPos);
+        dst.position(decoder.outPos);
+    }
+
+    /**
+     * Copies the input through a small array so that a direct or mapped source can still use the array decoder.
+     */
+    private static void decodeStaged(ByteBuffer src, byte[] dst, int dstOff, int dstLen) throws IOException {
+        final byte[] inBuffer = new byte[STAGING_SIZE];
+        final Yaz0Decoder decoder = new Yaz0Decoder(0, dstOff);
+        final int end = dstOff + dstLen;
+        int inEnd = 0;
+        while (decoder.outPos < end && !decoder.isInputEnded()) {
+            final int remaining = inEnd - decoder.inPos;
+            System.arraycopy(inBuffer, decoder.inPos, inBuffer, 0, remaining);
+            final int count = Math.min(inBuffer.length - remaining, src.remaining());
+            src.get(inBuffer, remaining, count);
+            decoder.inPos = 0;
+            inEnd = remaining + count;
+            decoder.decode(inBuffer, inEnd, !src.hasRemaining(), dst, dstOff, end, end);
+        }
+        src.position(src.position() - (inEnd - decoder.inPos));
+        if (decoder.outPos < end) {
+            throw new EOFException("Yaz0 data ended after " + (decoder.outPos - dstOff) + " of " + dstLen + " bytes");
+        }
+    }
+
+    /**
+     * Whether the last call stopped because the input ran out at a group boundary with {@code endOfInput} set.
+     */
+    boolean isInputEnded() {
+        return inputEnded;
+    }
+
+    /**
+     * Decodes whole chunks from {@code src[inPos..inEnd)} into {@code dst}. Decoding stops once {@code outPos} reaches
+     * {@code outLimit}, which a final back-reference may overshoot up to {@code outEnd}. Unless {@code endOfInput} is
+     * set, decoding also stops when less than {@link #MAX_CHUNK_INPUT} bytes of input remain, so that the caller can
+     * refill. Back-references may not reach below {@code dstBase}.
+     */
+    void decode(
+        byte[] src, int inEnd, boolean endOfInput, byte[] dst, int dstBase, int outLimit, int outEnd
+    ) throws IOException {
+        int inPos = this.inPos;
+        int outPos = this.outPos;
+        int group = this.group;
+        int groupLen = this.groupLen;
+        try {
+            while (outPos < outLimit) {
+                if (!endOfInput && inEnd - inPos < MAX_CHUNK_INPUT) break;
+                if (groupLen == 0) {
+                    if (inPos >= inEnd) {
+                        inputEnded = true;
+                        break;
+                    }
+                    group = src[inPos++] & 0xff;
+                    groupLen = 8;
+                }
+                if ((group & 0x80) != 0) {
+                    if (inPos >= inEnd) {
+                        throw new EOFException("Expected byte in chunk");
+                    }
+                    if (outPos >= outEnd) {
+                        throw new IOException("Illegal copyLen: " + outPos + " + 1 > " + outEnd);
+                    }
+                    dst[outPos++] = src[inPos++];
+                } else {
+                    if (inEnd - inPos < 2) {
+                        throw new EOFException("Expected byte " + (inEnd - inPos + 1) + " of chunk header");
+                    }
+                    final int byte1 = src[inPos++] & 0xff;
+                    final int dist = (((byte1 & 0xf) << 8) | (src[inPos++] & 0xff)) + 1;
+                    final int copyLen;
+                    if ((byte1 >> 4) == 0) {
+                        if (inPos >= inEnd) {
+                            throw new EOFException("Expected byte 3 of chunk header");
+                        }
+                        copyLen = (src[inPos++] & 0xff) + 0x12;
+                    } else {
+                        copyLen = (byte1 >> 4) + 2;
+                    }
+                    final int copyOffset = outPos - dist;
+                    if (copyOffset < dstBase) {
+                        throw new IOException("Illegal copyOffset: " + (copyOffset - dstBase) + " < 0");
+                    }
+                    if (outPos + copyLen > outEnd) {
+                        throw new IOException("Illegal copyLen: " + outPos + " + " + copyLen + " > " + outEnd);
+                    }
+                    copyWithin(dst, copyOffset, outPos, copyLen);
+                    outPos += copyLen;
+                }
+                groupLen--;
+                group <<= 1;
+            }
+        } finally {
+            this.inPos = inPos;
+            this.outPos = outPos;
+            this.group = group;
+            this.groupLen = groupLen;
+        }
+    }
+
+    /**
+     * Same as the array variant, but with absolute indices into the buffers, so that direct and mapped buffers can be
+     * used on either side.
+     */
+    void decode(ByteBuffer src, int inEnd, ByteBuffer dst, int dstBase, int outEnd) throws IOException {
+        int inPos = this.inPos;
+        int outPos = this.outPos;
+        int group = this.group;
+        int groupLen = this.groupLen;
+        try {
+            while (outPos < outEnd) {
+                if (groupLen == 0) {
+                    if (inPos >= inEnd) {
+                        inputEnded = true;
+                        break;
+                    }
+                    group = src.get(inPos++) & 0xff;
+                    groupLen = 8;
+                }
+                if ((group & 0x80) != 0) {
+                    if (inPos >= inEnd) {
+                        throw new EOFException("Expected byte in chunk");
+                    }
+                    dst.put(outPos++, src.get(inPos++));
+                } else {
+                    if (inEnd - inPos < 2) {
+                        throw new EOFException("Expected byte " + (inEnd - inPos + 1) + " of chunk header");
+                    }
+                    final int byte1 = src.get(inPos++) & 0xff;
+                    final int dist = (((byte1 & 0xf) << 8) | (src.get(inPos++) & 0xff)) + 1;
+                    final int copyLen;
+                    if ((byte1 >> 4) == 0) {
+                        if (inPos >= inEnd) {
+                            throw new EOFException("Expected byte 3 of chunk header");
+                        }
+                        copyLen = (src.get(inPos++) & 0xff) + 0x12;
+                    } else {
+                        copyLen = (byte1 >> 4) + 2;
+                    }
+                    final int copyOffset = outPos - dist;
+                    if (copyOffset < dstBase) {
+                        throw new IOException("Illegal copyOffset: " + (copyOffset - dstBase) + " < 0");
+                    }
+                    if (outPos + copyLen > outEnd) {
+                        throw new IOException("Illegal copyLen: " + outPos + " + " + copyLen + " > " + outEnd);
+                    }
+                    if (dist >= copyLen) {
+                        dst.put(outPos, dst, copyOffset, copyLen);
+                        outPos += copyLen;
+                    } else {
+                        for (int i = 0; i < copyLen; i++) { // Custom loop to handle overlaps correctly
+                            dst.put(outPos++, dst.get(copyOffset + i));
+                        }
+                    }
+                }
+                groupLen--;
+                group <<= 1;
+            }
+        } finally {
+            this.inPos = inPos;
+            this.outPos = outPos;
+            this.group = group;
+            this.groupLen = groupLen;
+        }
+    }
+
+    /**
+     * Copies a back-reference. Overlapping references repeat with a period of {@code to - from}, so the copied range
+     * can double with each step instead of going byte by byte.
+     */
+    static void copyWithin(byte[] buf, int from, int to, int len) {
+        final int dist = to - from;
+        if (dist >= len) {
+            System.arraycopy(buf, from, buf, to, len);
+            return;
+        }
+        int copied = 0;
+        while (copied < len) {
+            final int n = Math.min(len - copied, dist + copied);
+            System.arraycopy(buf, from, buf, to + copied, n);
+            copied += n;
+        }
+    }
+}
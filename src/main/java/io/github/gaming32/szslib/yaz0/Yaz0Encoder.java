@@ -0,0 +1,471 @@
+package io.github.gaming32.szslib.yaz0;
+
+import io.github.gaming32.szslib.SzsDetector;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Yaz0 compressor using a hash-chain match finder over the 4 KiB window.
+ *
+ * @apiNote Thread-safety: the match finder tables are reused between calls, so a {@link Yaz0Encoder} instance must
+ * not be used from multiple threads at once.
+ */
+public final class Yaz0Encoder {
+    public static final int HEADER_SIZE = 16;
+    public static final int WINDOW_SIZE = 0x1000;
+    public static final int MIN_MATCH = 3;
+    public static final int MAX_MATCH = 0x111;
+
+    private static final int HASH_BITS = 15;
+    private static final int BLOCK_SIZE = 0x40000;
+
+    private final int[] head = new int[1 << HASH_BITS];
+    private final int[] prev = new int[WINDOW_SIZE];
+    private final Level level;
+    private final int maxChain;
+
+    private int matchDist;
+    private char[] optimalLens;
+    private char[] optimalDists;
+    private int[] optimalCosts;
+
+    public Yaz0Encoder() {
+        this(Level.GREEDY);
+    }
+
+    public Yaz0Encoder(Level level) {
+        this(level, level.defaultMaxChain);
+    }
+
+    public Yaz0Encoder(int maxChain) {
+        this(Level.GREEDY, maxChain);
+    }
+
+    /**
+     * @param maxChain How many earlier positions with the same hash are checked for each match
+     */
+    public Yaz0Encoder(Level level, int maxChain) {
+        if (maxChain < 1) {
+            throw new IllegalArgumentException("maxChain < 1");
+        }
+        this.level = level;
+        this.maxChain = maxChain;
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    public static int maxEncodedSize(int uncompressedSize) {
+        return HEADER_SIZE + uncompressedSize + (uncompressedSize + 7) / 8;
+    }
+
+    public byte[] encode(byte[] src) {
+        return encode(src, 0, src.length);
+    }
+
+    public byte[] encode(byte[] src, int off, int len) {
+        Objects.checkFromIndexSize(off, len, src.length);
+        final byte[] result = new byte[maxEncodedSize(len)];
+        return Arrays.copyOf(result, encode(src, off, len, result, 0));
+    }
+
+    public ByteBuffer encode(ByteBuffer src) {
+        final int len = src.remaining();
+        if (src.hasArray()) {
+            final ByteBuffer result = ByteBuffer.wrap(encode(src.array(), src.arrayOffset() + src.position(), len));
+            src.position(src.limit());
+            return result;
+        }
+        final byte[] bytes = new byte[len];
+        src.get(bytes);
+        return ByteBuffer.wrap(encode(bytes));
+    }
+
+    public void encode(byte[] src, int off, int len, OutputStream out) throws IOException {
+        final byte[] result = encode(src, off, len);
+        out.write(result);
+    }
+
+    /**
+     * Encodes {@code len} bytes of {@code src} into {@code dst}, which must have room for at least
+     * {@link #maxEncodedSize} bytes.
+     * @return The number of bytes written to {@code dst}
+     */
+    public int encode(byte[] src, int off, int len, byte[] dst, int dstOff) {
+        Objects.checkFromIndexSize(off, len, src.length);
+        Objects.checkFromIndexSize(dstOff, maxEncodedSize(len), dst.length);
+        writeHeader(dst, dstOff, len);
+        if (level == Level.STORE) {
+            return store(src, off, len, dst, dstOff + HEADER_SIZE) - dstOff;
+        }
+        final GroupWriter writer = new GroupWriter(dst, dstOff + HEADER_SIZE);
+        final Block block = new Block();
+        Arrays.fill(head, -1);
+        for (int start = off, end = off + len; start < end; start += Math.min(BLOCK_SIZE, end - start)) {
+            parse(src, start, start + Math.min(BLOCK_SIZE, end - start), block);
+            writer.write(block);
+        }
+        return writer.outPtr - dstOff;
+    }
+
+    /**
+     * Encodes {@code src} on the {@link ForkJoinPool#commonPool() common pool}. See
+     * {@link #encodeParallel(byte[], int, int, ForkJoinPool)}.
+     */
+    public byte[] encodeParallel(byte[] src) {
+        return encodeParallel(src, 0, src.length, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Splits the input into fixed-size blocks and compresses them concurrently on {@code pool}, with each block's
+     * match finder seeded with the 4 KiB before it. Block boundaries don't depend on the number of threads, and the
+     * result is identical to {@link #encode(byte[], int, int)}.
+     */
+    public byte[] encodeParallel(byte[] src, int off, int len, ForkJoinPool pool) {
+        Objects.checkFromIndexSize(off, len, src.length);
+        if (level == Level.STORE) {
+            return encode(src, off, len);
+        }
+        final List<ForkJoinTask<Block>> tasks = new ArrayList<>(len / BLOCK_SIZE + 1);
+        for (int start = off, end = off + len; start < end; start += Math.min(BLOCK_SIZE, end - start)) {
+            final int blockStart = start;
+            final int blockEnd = start + Math.min(BLOCK_SIZE, end - start);
+            final int historyStart = Math.max(off, blockStart - WINDOW_SIZE);
+            tasks.add(pool.submit(() -> {
+                final Yaz0Encoder encoder = copySettings();
+                Arrays.fill(encoder.head, -1);
+                for (int pos = historyStart; pos < blockStart; pos++) {
+                    encoder.insert(src, pos, blockStart);
+                }
+                final Block block = new Block();
+                encoder.parse(src, blockStart, blockEnd, block);
+                block.trim();
+                return block;
+            }));
+        }
+
+        final byte[] result = new byte[maxEncodedSize(len)];
+        writeHeader(result, 0, len);
+        final GroupWriter writer = new GroupWriter(result, HEADER_SIZE);
+        for (final ForkJoinTask<Block> task : tasks) {
+            writer.write(task.join());
+        }
+        return Arrays.copyOf(result, writer.outPtr);
+    }
+
+    private Yaz0Encoder copySettings() {
+        return new Yaz0Encoder(level, maxChain);
+    }
+
+    /**
+     * Writes every byte as a literal, eight at a time behind a {@code 0xff} group byte.
+     */
+    private static int store(byte[] src, int off, int len, byte[] dst, int outPtr) {
+        final int end = off + len;
+        int pos = off;
+        while (pos < end) {
+            final int count = Math.min(8, end - pos);
+            dst[outPtr++] = (byte)(0xff00 >> count);
+            System.arraycopy(src, pos, dst, outPtr, count);
+            pos += count;
+            outPtr += count;
+        }
+        return outPtr;
+    }
+
+    static void writeHeader(byte[] dst, int off, int uncompressedSize) {
+        final int magic = SzsDetector.YAZ0_MAGIC;
+        dst[off] = (byte)(magic >> 24);
+        dst[off + 1] = (byte)(magic >> 16);
+        dst[off + 2] = (byte)(magic >> 8);
+        dst[off + 3] = (byte)magic;
+        dst[off + 4] = (byte)(uncompressedSize >> 24);
+        dst[off + 5] = (byte)(uncompressedSize >> 16);
+        dst[off + 6] = (byte)(uncompressedSize >> 8);
+        dst[off + 7] = (byte)uncompressedSize;
+        Arrays.fill(dst, off + 8, off + HEADER_SIZE, (byte)0);
+    }
+
+    /**
+     * Parses {@code src[start..end)} into {@code block}. Matches never cross {@code end}, and every position is added
+     * to the hash chains as long as it has three bytes before {@code end}, whatever the level.
+     */
+    private void parse(byte[] src, int start, int end, Block block) {
+        block.clear();
+        switch (level) {
+            case STORE -> {
+                for (int pos = start; pos < end; pos++) {
+                    block.literal(src[pos]);
+                }
+            }
+            case GREEDY -> parseGreedy(src, start, end, block);
+            case LAZY -> parseLazy(src, start, end, block);
+            case OPTIMAL -> parseOptimal(src, start, end, block);
+        }
+    }
+
+    private void parseGreedy(byte[] src, int start, int end, Block block) {
+        int pos = start;
+        while (pos < end) {
+            final int len = findMatch(src, pos, end);
+            if (len < MIN_MATCH) {
+                block.literal(src[pos]);
+                insert(src, pos++, end);
+            } else {
+                block.match(matchDist, len);
+                for (final int matchEnd = pos + len; pos < matchEnd; pos++) {
+                    insert(src, pos, end);
+                }
+            }
+        }
+    }
+
+    /**
+     * Before taking a match, checks whether the next position has a longer one. If it does, a literal is emitted
+     * instead and the longer match is considered in turn.
+     */
+    private void parseLazy(byte[] src, int start, int end, Block block) {
+        int pos = start;
+        int len = findMatch(src, pos, end);
+        int dist = matchDist;
+        while (pos < end) {
+            if (len < MIN_MATCH) {
+                block.literal(src[pos]);
+                insert(src, pos++, end);
+                if (pos < end) {
+                    len = findMatch(src, pos, end);
+                    dist = matchDist;
+                }
+                continue;
+            }
+            insert(src, pos, end);
+            if (len < MAX_MATCH && pos + 1 < end) {
+                final int nextLen = findMatch(src, pos + 1, end);
+                if (nextLen > len) {
+                    block.literal(src[pos++]);
+                    len = nextLen;
+                    dist = matchDist;
+                    continue;
+                }
+            }
+            block.match(dist, len);
+            for (final int matchEnd = pos + len; ++pos < matchEnd; ) {
+                insert(src, pos, end);
+            }
+            if (pos < end) {
+                len = findMatch(src, pos, end);
+                dist = matchDist;
+            }
+        }
+    }
+
+    /**
+     * Finds the longest match at every position first, then picks the cheapest way through the block from the back.
+     * A literal costs 9 bits, a two-byte match 17, and a three-byte match 25, counting its flag bit. Any length up to
+     * the longest match at a position can reuse that match's distance.
+     */
+    private void parseOptimal(byte[] src, int start, int end, Block block) {
+        final int size = end - start;
+        if (optimalLens == null) {
+            optimalLens = new char[BLOCK_SIZE];
+            optimalDists = new char[BLOCK_SIZE];
+            optimalCosts = new int[BLOCK_SIZE + 1];
+        }
+        final char[] lens = optimalLens;
+        final char[] dists = optimalDists;
+        final int[] costs = optimalCosts;
+
+        for (int i = 0; i < size; i++) {
+            final int len = findMatch(src, start + i, end);
+            lens[i] = (char)(len < MIN_MATCH ? 0 : len);
+            dists[i] = (char)matchDist;
+            insert(src, start + i, end);
+        }
+
+        // Afterward, lens[i] holds the chosen chunk length at i (0 for a literal)
+        costs[size] = 0;
+        for (int i = size - 1; i >= 0; i--) {
+            int best = costs[i + 1] + 9;
+            int bestLen = 0;
+            final int maxLen = lens[i];
+            for (int len = MIN_MATCH; len <= maxLen; len++) {
+                final int cost = costs[i + len] + (len < 0x12 ? 17 : 25);
+                if (cost < best) {
+                    best = cost;
+                    bestLen = len;
+                }
+            }
+            costs[i] = best;
+            lens[i] = (char)bestLen;
+        }
+
+        for (int i = 0; i < size; ) {
+            final int len = lens[i];
+            if (len == 0) {
+                block.literal(src[start + i]);
+                i++;
+            } else {
+                block.match(dists[i], len);
+                i += len;
+            }
+        }
+    }
+
+    static int writeMatch(byte[] dst, int outPtr, int dist, int len) {
+        final int distBits = dist - 1;
+        if (len >= 0x12) {
+            dst[outPtr++] = (byte)(distBits >> 8);
+            dst[outPtr++] = (byte)distBits;
+            dst[outPtr++] = (byte)(len - 0x12);
+        } else {
+            dst[outPtr++] = (byte)(((len - 2) << 4) | (distBits >> 8));
+            dst[outPtr++] = (byte)distBits;
+        }
+        return outPtr;
+    }
+
+    /**
+     * The chunks of one parsed block, without group bytes. Bit {@code i} of {@link #flags} (MSB first) is set if
+     * chunk {@code i} is a literal, and {@link #payload} holds the chunks' bytes as they appear in the output.
+     */
+    private static final class Block {
+        byte[] flags = new byte[BLOCK_SIZE / 8];
+        byte[] payload = new byte[BLOCK_SIZE];
+        int chunkCount;
+        int payloadLen;
+
+        void clear() {
+            Arrays.fill(flags, 0, (chunkCount + 7) >> 3, (byte)0);
+            chunkCount = 0;
+            payloadLen = 0;
+        }
+
+        void literal(byte value) {
+            flags[chunkCount >> 3] |= (byte)(0x80 >>> (chunkCount & 7));
+            chunkCount++;
+            payload[payloadLen++] = value;
+        }
+
+        void match(int dist, int len) {
+            chunkCount++;
+            payloadLen = writeMatch(payload, payloadLen, dist, len);
+        }
+
+        void trim() {
+            flags = Arrays.copyOf(flags, (chunkCount + 7) >> 3);
+            payload = Arrays.copyOf(payload, payloadLen);
+        }
+    }
+
+    /**
+     * Interleaves group bytes with the chunks of consecutive {@link Block}s.
+     */
+    private static final class GroupWriter {
+        final byte[] dst;
+        int outPtr;
+        int groupPtr;
+        int groupBit;
+
+        GroupWriter(byte[] dst, int outPtr) {
+            this.dst = dst;
+            this.outPtr = outPtr;
+        }
+
+        void write(Block block) {
+            final byte[] flags = block.flags;
+            final byte[] payload = block.payload;
+            int payloadPtr = 0;
+            for (int i = 0; i < block.chunkCount; i++) {
+                if (groupBit == 0) {
+                    groupPtr = outPtr++;
+                    dst[groupPtr] = 0;
+                    groupBit = 0x80;
+                }
+                if ((flags[i >> 3] & (0x80 >>> (i & 7))) != 0) {
+                    dst[groupPtr] |= (byte)groupBit;
+                    dst[outPtr++] = payload[payloadPtr++];
+                } else {
+                    final int chunkLen = (payload[payloadPtr] & 0xf0) == 0 ? 3 : 2;
+                    System.arraycopy(payload, payloadPtr, dst, outPtr, chunkLen);
+                    payloadPtr += chunkLen;
+                    outPtr += chunkLen;
+                }
+                groupBit >>= 1;
+            }
+        }
+    }
+
+    public enum Level {
+        /**
+         * Literals only. The output is 1/8 larger than the input, but encoding is about as fast as copying.
+         */
+        STORE(1),
+        /**
+         * Always takes the longest match at the current position.
+         */
+        GREEDY(128),
+        /**
+         * Skips a match if the next position has a longer one, like zlib's lazy matching.
+         */
+        LAZY(128),
+        /**
+         * Minimizes the encoded size of each block given the longest match at every position. This is the slowest
+         * level.
+         */
+        OPTIMAL(1024);
+
+        private final int defaultMaxChain;
+
+        Level(int defaultMaxChain) {
+            this.defaultMaxChain = defaultMaxChain;
+        }
+    }
+
+    private static int hash(byte[] src, int pos) {
+        final int value = ((src[pos] & 0xff) << 16) | ((src[pos + 1] & 0xff) << 8) | (src[pos + 2] & 0xff);
+        return (value * 0x9E3779B1) >>> (32 - HASH_BITS);
+    }
+
+    private void insert(byte[] src, int pos, int end) {
+        if (pos + MIN_MATCH > end) return;
+        final int hash = hash(src, pos);
+        prev[pos & (WINDOW_SIZE - 1)] = head[hash];
+        head[hash] = pos;
+    }
+
+    private int findMatch(byte[] src, int pos, int end) {
+        final int maxLen = Math.min(MAX_MATCH, end - pos);
+        if (maxLen < MIN_MATCH) {
+            return 0;
+        }
+        int bestLen = MIN_MATCH - 1;
+        int candidate = head[hash(src, pos)];
+        int chain = maxChain;
+        while (candidate >= 0 && pos - candidate <= WINDOW_SIZE && chain-- > 0) {
+            if (src[candidate + bestLen] == src[pos + bestLen] && src[candidate] == src[pos]) {
+                int len = 1;
+                while (len < maxLen && src[candidate + len] == src[pos + len]) {
+                    len++;
+                }
+                if (len > bestLen) {
+                    bestLen = len;
+                    matchDist = pos - candidate;
+                    if (len == maxLen) break;
+                }
+            }
+            final int next = prev[candidate & (WINDOW_SIZE - 1)];
+            if (next >= candidate) break;
+            candidate = next;
+        }
+        return bestLen;
+    }
+}
@@ -0,0 +1,286 @@
+package io.github.gaming32.szslib.yaz0;
+
+import org.apache.commons.compress.utils.IOUtils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Decoder checkpoints taken every {@link #getInterval} bytes of output, so that decoding can resume near any output
+ * offset. An index can be saved next to its archive with {@link #write} and loaded again with {@link #read}.
+ * <p>
+ * An index also records the length of the compressed stream and a CRC-32 of its first 4 KiB, which
+ * {@link Yaz0SeekableChannel} checks so that an index for a different or since-modified file is rejected.
+ */
+public final class Yaz0Index {
+    public static final int DEFAULT_INTERVAL = 0x20000;
+
+    private static final int MAGIC = 0x59304958; // "Y0IX"
+    private static final int VERSION = 2;
+    private static final int CHECKED_HEAD_SIZE = 0x1000;
+
+    private final int uncompressedSize;
+    private final long compressedSize;
+    private final int headChecksum;
+    private final int interval;
+    private final List<Checkpoint> checkpoints;
+
+    private Yaz0Index(
+        int uncompressedSize, long compressedSize, int headChecksum, int interval, List<Checkpoint> checkpoints
+    ) {
+        this.uncompressedSize = uncompressedSize;
+        this.compressedSize = compressedSize;
+        this.headChecksum = headChecksum;
+        this.interval = interval;
+        this.checkpoints = checkpoints;
+    }
+
+    /**
+     * Builds an index in one decoding pass over {@code is}, which must be positioned at the Yaz0 header.
+     */
+    public static Yaz0Index build(InputStream is, int interval) throws IOException {
+        if (interval < Yaz0Encoder.WINDOW_SIZE) {
+            throw new IllegalArgumentException("interval < " + Yaz0Encoder.WINDOW_SIZE);
+        }
+        final HeadRecorder head = new HeadRecorder(is);
+        final int uncompressedSize = Yaz0Decoder.readHeader(head);
+        final Yaz0Window window = new Yaz0Window(head, uncompressedSize);
+        final List<Checkpoint> checkpoints = new ArrayList<>(uncompressedSize / interval + 1);
+        checkpoints.add(window.checkpoint());
+        for (long next = interval; next < uncompressedSize; next += interval) {
+            window.skipTo(next);
+            window.checkComplete(next);
+            final Checkpoint checkpoint = window.checkpoint();
+            if (checkpoint.outputOffset >= uncompressedSize) break;
+            checkpoints.add(checkpoint);
+        }
+        // Decode the rest to find where the compressed stream ends
+        window.skipTo(uncompressedSize);
+        window.checkComplete(uncompressedSize);
+        final long compressedSize = window.checkpoint().inputOffset();
+        return new Yaz0Index(
+            uncompressedSize, compressedSize, head.checksum((int)Math.min(compressedSize, CHECKED_HEAD_SIZE)),
+            interval, Collections.unmodifiableList(checkpoints)
+        );
+    }
+
+    public static Yaz0Index build(SeekableByteChannel channel, int interval) throws IOException {
+        channel.position(0);
+        return build(Channels.newInputStream(channel), interval);
+    }
+
+    public static Yaz0Index build(Path path, int interval) throws IOException {
+        try (InputStream is = Files.newInputStream(path)) {
+            return build(is, interval);
+        }
+    }
+
+    public static Yaz0Index read(InputStream is) throws IOException {
+        final DataInputStream dis = new DataInputStream(is);
+        if (dis.readInt() != MAGIC) {
+            throw new IOException("Invalid Yaz0 index magic");
+        }
+        final int version = dis.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unknown Yaz0 index version: " + version);
+        }
+        final int uncompressedSize = dis.readInt();
+        if (uncompressedSize < 0) {
+            throw new IOException("Invalid Yaz0 index uncompressed size: " + uncompressedSize);
+        }
+        final long compressedSize = dis.readLong();
+        if (compressedSize < Yaz0Encoder.HEADER_SIZE) {
+            throw new IOException("Invalid Yaz0 index compressed size: " + compressedSize);
+        }
+        final int headChecksum = dis.readInt();
+        final int interval = dis.readInt();
+        if (interval < Yaz0Encoder.WINDOW_SIZE) {
+            throw new IOException("Invalid Yaz0 index interval: " + interval);
+        }
+        final int count = dis.readInt();
+        if (count < 1 || count > uncompressedSize / interval + 1) {
+            throw new IOException("Invalid Yaz0 index checkpoint count: " + count);
+        }
+        final List<Checkpoint> checkpoints = new ArrayList<>(count);
+        long lastInputOffset = Yaz0Encoder.HEADER_SIZE;
+        for (int i = 0; i < count; i++) {
+            final int outputOffset = dis.readInt();
+            // The first checkpoint is the start of the data, and the rest must go forward through it
+            final boolean valid = i == 0
+                ? outputOffset == 0
+                : outputOffset > checkpoints.get(i - 1).outputOffset && outputOffset < uncompressedSize;
+            if (!valid) {
+                throw new IOException("Invalid Yaz0 index output offset: " + outputOffset);
+            }
+            final long inputOffset = dis.readLong();
+            if (inputOffset < lastInputOffset || inputOffset > compressedSize) {
+                throw new IOException("Invalid Yaz0 index input offset: " + inputOffset);
+            }
+            lastInputOffset = inputOffset;
+            final int group = dis.readInt();
+            final int groupLen = dis.readUnsignedByte();
+            if (groupLen > 8) {
+                throw new IOException("Invalid Yaz0 index group length: " + groupLen);
+            }
+            final int windowLen = dis.readUnsignedShort();
+            if (windowLen != Math.min(outputOffset, Yaz0Encoder.WINDOW_SIZE)) {
+                throw new IOException("Invalid Yaz0 index window length: " + windowLen);
+            }
+            final byte[] window = new byte[windowLen];
+            dis.readFully(window);
+            checkpoints.add(new Checkpoint(outputOffset, inputOffset, group, groupLen, window));
+        }
+        return new Yaz0Index(
+            uncompressedSize, compressedSize, headChecksum, interval, Collections.unmodifiableList(checkpoints)
+        );
+    }
+
+    public static Yaz0Index read(Path path) throws IOException {
+        try (InputStream is = new BufferedInputStream(Files.newInputStream(path))) {
+            return read(is);
+        }
+    }
+
+    public void write(OutputStream os) throws IOException {
+        final DataOutputStream dos = new DataOutputStream(os);
+        dos.writeInt(MAGIC);
+        dos.writeInt(VERSION);
+        dos.writeInt(uncompressedSize);
+        dos.writeLong(compressedSize);
+        dos.writeInt(headChecksum);
+        dos.writeInt(interval);
+        dos.writeInt(checkpoints.size());
+        for (final Checkpoint checkpoint : checkpoints) {
+            dos.writeInt(checkpoint.outputOffset);
+            dos.writeLong(checkpoint.inputOffset);
+            dos.writeInt(checkpoint.group);
+            dos.writeByte(checkpoint.groupLen);
+            dos.writeShort(checkpoint.window.length);
+            dos.write(checkpoint.window);
+        }
+        dos.flush();
+    }
+
+    public void write(Path path) throws IOException {
+        try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(path))) {
+            write(os);
+        }
+    }
+
+    public int getUncompressedSize() {
+        return uncompressedSize;
+    }
+
+    /**
+     * @return The length of the compressed stream, including its header
+     */
+    public long getCompressedSize() {
+        return compressedSize;
+    }
+
+    /**
+     * Throws if {@code compressed} doesn't look like the data this index was built from. Its length and the checksum
+     * of its first 4 KiB are compared, so this only reads a single block.
+     */
+    void check(SeekableByteChannel compressed) throws IOException {
+        final long size = compressed.size();
+        if (size < compressedSize) {
+            throw new IOException("Yaz0 index doesn't match: compressed size " + compressedSize + " > " + size);
+        }
+        final ByteBuffer head = ByteBuffer.allocate((int)Math.min(compressedSize, CHECKED_HEAD_SIZE));
+        compressed.position(0);
+        IOUtils.readFully(compressed, head);
+        final CRC32 crc = new CRC32();
+        crc.update(head.flip());
+        if ((int)crc.getValue() != headChecksum) {
+            throw new IOException("Yaz0 index doesn't match: checksum differs");
+        }
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public List<Checkpoint> getCheckpoints() {
+        return checkpoints;
+    }
+
+    /**
+     * @return The last checkpoint at or before {@code position}
+     */
+    public Checkpoint find(long position) {
+        int low = 0;
+        int high = checkpoints.size() - 1;
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (checkpoints.get(mid).outputOffset <= position) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return checkpoints.get(low);
+    }
+
+    /**
+     * @param outputOffset The output offset decoding resumes at
+     * @param inputOffset The offset of the next compressed byte, counted from the start of the Yaz0 header
+     * @param group The remaining bits of the current group byte, already shifted into the top position
+     * @param groupLen How many chunks are left in the current group
+     * @param window The output just before {@code outputOffset}, up to 4 KiB
+     */
+    public record Checkpoint(int outputOffset, long inputOffset, int group, int groupLen, byte[] window) {
+    }
+
+    /**
+     * Keeps a copy of the first {@link #CHECKED_HEAD_SIZE} bytes read through it.
+     */
+    private static final class HeadRecorder extends FilterInputStream {
+        private final byte[] head = new byte[CHECKED_HEAD_SIZE];
+        private int recorded;
+
+        HeadRecorder(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int result = in.read();
+            if (result >= 0 && recorded < head.length) {
+                head[recorded++] = (byte)result;
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int result = in.read(b, off, len);
+            if (result > 0 && recorded < head.length) {
+                final int count = Math.min(result, head.length - recorded);
+                System.arraycopy(b, off, head, recorded, count);
+                recorded += count;
+            }
+            return result;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Read instead, so that skipped bytes are recorded too
+            return recorded < head.length ? Math.max(read(new byte[(int)Math.min(n, head.length)]), 0) : in.skip(n);
+        }
+
+        int checksum(int length) {
+            final CRC32 crc = new CRC32();
+            crc.update(head, 0, Math.min(length, recorded));
+            return (int)crc.getValue();
+        }
+    }
+}
@@ -3,25 +3,34 @@ package io.github.gaming32.szslib.yaz0;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Objects;
 
+/**
+ * Decodes a Yaz0 stream into a buffer of its full uncompressed size, reading the compressed data in blocks of up to
+ * 8 KiB. Near the end of the output, each read is capped at the most input the remaining output could take.
+ * <p>
+ * If the delegate {@link InputStream#markSupported() supports mark}, any input read past the end of the Yaz0 data is
+ * given back once all output has been decoded, so the delegate can go on to read whatever follows it. Otherwise, up to
+ * one block past the end may have been consumed.
+ */
 public class Yaz0InputStream extends InputStream {
+    private static final int READ_AHEAD = 0x1000;
+
     private final InputStream delegate;
     private final byte[] buffer;
+    private final byte[] inBuffer = new byte[8192];
+    private final Yaz0Decoder decoder = new Yaz0Decoder(0, 0);
 
-    private int outPtr;
-    private int copyLen;
-    private int copyOffset;
-    private int group;
-    private int groupLen;
+    private int inEnd;
+    private boolean inEof;
+    private int lastRead;
+    private int readPtr;
 
     public Yaz0InputStream(InputStream delegate) throws IOException {
         this.delegate = delegate;
         try {
-            if (delegate.read() != 'Y' || delegate.read() != 'a' || delegate.read() != 'z' || delegate.read() != '0') {
-                throw new IOException("Invalid Yaz0 magic");
-            }
-            buffer = new byte[(delegate.read() << 24) | (delegate.read() << 16) | (delegate.read() << 8) | delegate.read()];
-            delegate.skipNBytes(8);
+            buffer = new byte[Yaz0Decoder.readHeader(delegate)];
         } catch (IOException e) {
             delegate.close();
             throw e;
@@ -46,124 +55,131 @@ public class Yaz0InputStream extends InputStream {
 
     @Override
     public int available() {
-        return buffer.length - outPtr;
+        return buffer.length - readPtr;
     }
 
     @Override
     public int read() throws IOException {
-        if (outPtr >= buffer.length) {
-            return -1;
-        }
-        if (copyLen > 0) {
-            return copy1();
-        }
-        if (readChunk()) {
-            final int value = delegate.read();
-            if (value < 0) {
-                throw new EOFException("Expected byte in chunk");
-            }
-            buffer[outPtr++] = (byte)value;
-            return value;
-        } else {
-            if (group < 0) {
+        if (readPtr >= decoder.outPos) {
+            fill(Math.min(readPtr + READ_AHEAD, buffer.length));
+            if (readPtr >= decoder.outPos) {
                 return -1;
             }
-            return copy1();
         }
+        return buffer[readPtr++] & 0xff;
     }
 
     @Override
     @SuppressWarnings("NullableProblems")
     public int read(byte[] b, int off, int len) throws IOException {
-        if (outPtr >= buffer.length) {
+        Objects.checkFromIndexSize(off, len, b.length);
+        if (len == 0) {
+            return 0;
+        }
+        if (readPtr >= buffer.length) {
             return -1;
         }
-        final int totalToRead = Math.min(len, buffer.length - outPtr);
-        len = totalToRead;
-        while (len > 0) {
-            if (copyLen > 0) {
-                final int toCopy = Math.min(len, copyLen);
-                if (copyOffset + toCopy >= outPtr) {
-                    for (int i = 0; i < toCopy; i++) { // Custom loop to handle overlaps correctly
-                        buffer[outPtr++] = buffer[copyOffset++];
-                    }
-                } else {
-                    System.arraycopy(buffer, copyOffset, buffer, outPtr, toCopy);
-                    copyOffset += toCopy;
-                    outPtr += toCopy;
-                }
-                System.arraycopy(buffer, outPtr - toCopy, b, off, toCopy);
-                off += toCopy;
-                len -= toCopy;
-                copyLen -= toCopy;
-            } else if (readChunk()) {
-                final int value = delegate.read();
-                if (value < 0) {
-                    throw new EOFException("Expected byte in chunk");
-                }
-                b[off++] = buffer[outPtr++] = (byte)value;
-                len--;
-            } else if (group < 0) {
-                return totalToRead - len;
-            }
+        len = Math.min(len, buffer.length - readPtr);
+        fill(readPtr + len);
+        len = Math.min(len, decoder.outPos - readPtr);
+        if (len <= 0) {
+            return -1;
+        }
+        System.arraycopy(buffer, readPtr, b, off, len);
+        readPtr += len;
+        return len;
+    }
+
+    /**
+     * Decodes the skipped output without copying it anywhere.
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
         }
-        return totalToRead;
+        final int target = (int)Math.min(buffer.length, readPtr + n);
+        fill(target);
+        final int skipped = Math.min(target, decoder.outPos) - readPtr;
+        readPtr += skipped;
+        return skipped;
     }
 
-    private int copy1() {
-        copyLen--;
-        return (buffer[outPtr++] = buffer[copyOffset++]) & 0xff;
+    /**
+     * If nothing has been read yet, this hands out the stream's own output buffer instead of copying it.
+     */
+    @Override
+    public byte[] readAllBytes() throws IOException {
+        if (readPtr != 0) {
+            return super.readAllBytes();
+        }
+        fill(buffer.length);
+        readPtr = decoder.outPos;
+        return readPtr == buffer.length ? buffer : Arrays.copyOf(buffer, readPtr);
     }
 
-    private void readGroup() throws IOException {
-        group = delegate.read();
-        if (group < 0) return;
-        groupLen = 8;
+    byte[] getBuffer() {
+        return buffer;
     }
 
-    private boolean readChunk() throws IOException {
-        if (groupLen == 0) {
-            readGroup();
-            if (group < 0) {
-                return false;
+    /**
+     * @return How much of the output has been decoded so far, which may be more than has been read
+     */
+    int getDecodedSize() {
+        return decoder.outPos;
+    }
+
+    /**
+     * Decodes until at least {@code target} bytes of output are available, or the input runs out.
+     */
+    void fill(int target) throws IOException {
+        while (decoder.outPos < target && !decoder.isInputEnded()) {
+            if (!inEof && inEnd - decoder.inPos < Yaz0Decoder.MAX_CHUNK_INPUT) {
+                refill();
             }
+            decoder.decode(inBuffer, inEnd, inEof, buffer, 0, target, buffer.length);
         }
-        groupLen--;
-        if ((group & 0x80) != 0) {
-            group <<= 1;
-            return true;
-        }
-        final int byte1 = delegate.read();
-        if (byte1 < 0) {
-            throw new EOFException("Expected byte 1 of chunk header");
+        if (decoder.outPos == buffer.length && lastRead > 0) {
+            giveBackUnread();
         }
-        final int byte2 = delegate.read();
-        if (byte2 < 0) {
-            throw new EOFException("Expected byte 2 of chunk header");
+    }
+
+    /**
+     * Moves the delegate back to the end of the Yaz0 data, if it supports mark and the unread input all came from the
+     * last read.
+     */
+    private void giveBackUnread() throws IOException {
+        final int unread = inEnd - decoder.inPos;
+        if (delegate.markSupported() && unread > 0 && unread <= lastRead) {
+            delegate.reset();
+            delegate.skipNBytes(lastRead - unread);
+            inEnd = decoder.inPos;
         }
-        copyOffset = outPtr - (((byte1 & 0xf) << 8) | byte2) - 1;
-        if (copyOffset >= outPtr) {
-            throw new IOException("Illegal copyOffset: " + copyOffset + " >= " + outPtr);
-        } else if (copyOffset < 0) {
-            throw new IOException("Illegal copyOffset: " + copyOffset + " < 0");
+        lastRead = 0;
+    }
+
+    private void refill() throws IOException {
+        final int remaining = inEnd - decoder.inPos;
+        System.arraycopy(inBuffer, decoder.inPos, inBuffer, 0, remaining);
+        decoder.inPos = 0;
+        inEnd = remaining;
+        // Each remaining output byte takes at most one input byte, plus a group byte for every eight
+        final long outputLeft = buffer.length - decoder.outPos;
+        final long inputLeft = outputLeft + (outputLeft + 7) / 8;
+        final int count = (int)Math.max(
+            Yaz0Decoder.MAX_CHUNK_INPUT - inEnd, Math.min(inBuffer.length - inEnd, inputLeft - inEnd)
+        );
+        if (delegate.markSupported()) {
+            delegate.mark(count);
         }
-        if ((byte1 & 0xf) == byte1) {
-            final int byte3 = delegate.read();
-            if (byte3 < 0) {
-                throw new EOFException("Expected byte 3 of chunk header");
-            }
-            copyLen = byte3 + 0x12;
+        final int read = delegate.read(inBuffer, inEnd, count);
+        if (read < 0) {
+            inEof = true;
+            lastRead = 0;
         } else {
-            copyLen = (byte1 >> 4) + 2;
-            if (copyLen < 3) {
-                throw new IOException("copyLen < 3");
-            }
-        }
-        if (outPtr + copyLen > buffer.length) {
-            throw new IOException("Illegal copyLen: " + outPtr + " + " + copyLen + " > " + buffer.length);
+            inEnd += read;
+            lastRead = read;
         }
-        group <<= 1;
-        return false;
     }
 
     @Override
@@ -0,0 +1,166 @@
+package io.github.gaming32.szslib.yaz0;
+
+import io.github.gaming32.szslib.util.ByteBufferChannel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A read-only view of the decompressed contents of a Yaz0 file that only decodes as far as has been asked for. Reads
+ * below the high-water mark copy straight from the output buffer; a read past it decodes up to the end of that read
+ * first. Opening a U8 archive through this channel only decodes its header and node table.
+ *
+ * @apiNote Thread-safety: {@link #read(ByteBuffer, long)} may be called from multiple threads at once. The
+ * channel's own position, used by {@link #read(ByteBuffer)}, is not thread-safe.
+ */
+public class Yaz0LazyChannel implements SeekableByteChannel {
+    private static final int DECODE_GRANULARITY = 0x4000;
+
+    private final Yaz0InputStream stream;
+    private final byte[] buffer;
+    // A lock rather than a monitor, so that virtual threads waiting on the decoder don't pin their carriers
+    private final Lock decodeLock = new ReentrantLock();
+    private volatile int decoded;
+    private volatile boolean closed;
+    private long position;
+
+    private Yaz0LazyChannel(Yaz0InputStream stream) {
+        this.stream = stream;
+        buffer = stream.getBuffer();
+    }
+
+    public static Yaz0LazyChannel open(InputStream compressed) throws IOException {
+        return new Yaz0LazyChannel(new Yaz0InputStream(compressed));
+    }
+
+    /**
+     * Opens the Yaz0 file starting at {@code compressed.position()}. The buffer is read in place and must not be
+     * modified while the channel is open.
+     */
+    public static Yaz0LazyChannel open(ByteBuffer compressed) throws IOException {
+        return open(Channels.newInputStream(new ByteBufferChannel(compressed)));
+    }
+
+    public static Yaz0LazyChannel open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return open(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * @return How many bytes from the start of the output have been decoded so far
+     */
+    public int getDecodedSize() {
+        return decoded;
+    }
+
+    private void checkClosed() throws ClosedChannelException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    private void decodeTo(long end) throws IOException {
+        if (end <= decoded) return;
+        decodeLock.lock();
+        try {
+            checkClosed();
+            if (end <= decoded) return;
+            final long rounded = (end + DECODE_GRANULARITY - 1) & -DECODE_GRANULARITY;
+            stream.fill((int)Math.min(rounded, buffer.length));
+            decoded = stream.getDecodedSize();
+        } finally {
+            decodeLock.unlock();
+        }
+    }
+
+    /**
+     * Reads from {@code position} without changing this channel's position.
+     */
+    public int read(ByteBuffer dst, long position) throws IOException {
+        checkClosed();
+        if (position < 0) {
+            throw new IllegalArgumentException("position < 0");
+        }
+        if (position >= buffer.length) {
+            return -1;
+        }
+        final int start = (int)position;
+        decodeTo(Math.min((long)start + dst.remaining(), buffer.length));
+        final int count = Math.min(dst.remaining(), decoded - start);
+        if (count <= 0) {
+            return dst.hasRemaining() ? -1 : 0;
+        }
+        dst.put(buffer, start, count);
+        return count;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        final int read = read(dst, position);
+        if (read > 0) {
+            position += read;
+        }
+        return read;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws ClosedChannelException {
+        checkClosed();
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long position() throws ClosedChannelException {
+        checkClosed();
+        return position;
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) throws ClosedChannelException {
+        checkClosed();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("newPosition < 0");
+        }
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws ClosedChannelException {
+        checkClosed();
+        return buffer.length;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) throws ClosedChannelException {
+        checkClosed();
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        decodeLock.lock();
+        try {
+            closed = true;
+            stream.close();
+        } finally {
+            decodeLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package io.github.gaming32.szslib.yaz0;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Yaz0 stores the uncompressed size in its header, so everything written to a {@link Yaz0OutputStream} is buffered
+ * and compressed in one go by {@link #finish} or {@link #close}.
+ */
+public class Yaz0OutputStream extends OutputStream {
+    private final OutputStream delegate;
+    private final Yaz0Encoder encoder;
+    private byte[] buffer;
+    private int count;
+    private boolean finished;
+
+    public Yaz0OutputStream(OutputStream delegate, Yaz0Encoder encoder) {
+        this.delegate = delegate;
+        this.encoder = encoder;
+        buffer = new byte[8192];
+    }
+
+    public Yaz0OutputStream(OutputStream delegate) {
+        this(delegate, new Yaz0Encoder());
+    }
+
+    public Yaz0OutputStream(Path path) throws IOException {
+        this(Files.newOutputStream(path));
+    }
+
+    public Yaz0OutputStream(File file) throws IOException {
+        this(new BufferedOutputStream(new FileOutputStream(file)));
+    }
+
+    public OutputStream getDelegate() {
+        return delegate;
+    }
+
+    public int getUncompressedSize() {
+        return count;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (finished) {
+            throw new IOException("Yaz0OutputStream already finished");
+        }
+    }
+
+    private void ensureCapacity(int extra) throws IOException {
+        final long needed = (long)count + extra;
+        if (needed <= buffer.length) return;
+        if (needed > Integer.MAX_VALUE - 8) {
+            throw new IOException("Yaz0 data too large: " + needed + " bytes");
+        }
+        buffer = Arrays.copyOf(buffer, (int)Math.min(Math.max(needed, buffer.length * 2L), Integer.MAX_VALUE - 8));
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        ensureCapacity(1);
+        buffer[count++] = (byte)b;
+    }
+
+    @Override
+    @SuppressWarnings("NullableProblems")
+    public void write(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        ensureOpen();
+        ensureCapacity(len);
+        System.arraycopy(b, off, buffer, count, len);
+        count += len;
+    }
+
+    /**
+     * Compresses and writes out everything written so far without closing the delegate. No more data may be written
+     * afterward.
+     */
+    public void finish() throws IOException {
+        if (finished) return;
+        finished = true;
+        final byte[] data = buffer;
+        buffer = null;
+        encoder.encode(data, 0, count, delegate);
+        delegate.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            delegate.close();
+        }
+    }
+}
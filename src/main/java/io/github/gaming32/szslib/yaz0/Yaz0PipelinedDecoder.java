@@ -0,0 +1,165 @@
+package io.github.gaming32.szslib.yaz0;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Yaz0 decoder that splits the work over two threads. A parser task on an {@link Executor} reads the group bytes and
+ * chunk headers, validates them, and passes compact tokens through a lock-free queue to the calling thread, which
+ * only copies literals and back-references into the output. This cuts the latency of decoding one large archive when
+ * spare cores are available; for small inputs, it falls back to {@link Yaz0Decoder}.
+ * <p>
+ * The calling thread waits on the parser without helping it, so calls from inside a {@link ForkJoinPool} (such as a
+ * parallel stream) also fall back to {@link Yaz0Decoder}. Otherwise, a saturated pool could leave the parser unscheduled
+ * forever. Other executors must be able to run the parser while the caller waits.
+ */
+public final class Yaz0PipelinedDecoder {
+    /**
+     * Outputs smaller than this are decoded on the calling thread alone.
+     */
+    public static final int MIN_PIPELINED_SIZE = 0x100000;
+
+    private static final int QUEUE_CAPACITY = 1 << 14;
+    private static final int FLUSH_INTERVAL = 256;
+    private static final long MATCH_FLAG = Long.MIN_VALUE;
+
+    private Yaz0PipelinedDecoder() {
+    }
+
+    /**
+     * Decodes a complete Yaz0 file, header included, using the {@link ForkJoinPool#commonPool() common pool}.
+     */
+    public static byte[] decode(byte[] src) throws IOException {
+        final byte[] result = new byte[Yaz0Decoder.getUncompressedSize(src, 0)];
+        decode(src, Yaz0Encoder.HEADER_SIZE, result, ForkJoinPool.commonPool());
+        return result;
+    }
+
+    /**
+     * Decodes the Yaz0 data (without header) starting at {@code src[off]} until {@code dst} is full, running the
+     * parser on {@code executor}. If this is called from a {@link ForkJoinPool} worker, or {@code dst} is small, the data
+     * is decoded on the calling thread alone.
+     */
+    public static void decode(byte[] src, int off, byte[] dst, Executor executor) throws IOException {
+        Objects.checkFromIndexSize(off, 0, src.length);
+        if (dst.length < MIN_PIPELINED_SIZE || ForkJoinTask.inForkJoinPool()) {
+            Yaz0Decoder.decode(src, off, dst);
+            return;
+        }
+        final SpscLongQueue queue = new SpscLongQueue(QUEUE_CAPACITY);
+        final CompletableFuture<Void> parser = CompletableFuture.runAsync(() -> {
+            try {
+                parse(src, off, dst.length, queue);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                queue.finish();
+            }
+        }, executor);
+        try {
+            materialize(src, dst, queue);
+        } finally {
+            queue.cancel();
+        }
+        try {
+            parser.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Producer stage. Literal runs become {@code srcOffset << 16 | length}, and back-references become
+     * {@link #MATCH_FLAG} {@code | distance << 16 | length}. All bounds are checked here, so the consumer can copy
+     * without checks.
+     */
+    private static void parse(byte[] src, int inPos, int outEnd, SpscLongQueue queue) throws IOException {
+        final int inEnd = src.length;
+        int outPos = 0;
+        int pending = 0;
+        while (outPos < outEnd) {
+            if (inPos >= inEnd) {
+                throw new EOFException("Yaz0 data ended after " + outPos + " of " + outEnd + " bytes");
+            }
+            int group = src[inPos++] & 0xff;
+            for (int groupLen = 8; groupLen > 0 && outPos < outEnd; ) {
+                final long token;
+                if ((group & 0x80) != 0) {
+                    int run = 0;
+                    while (groupLen > 0 && (group & 0x80) != 0 && outPos + run < outEnd) {
+                        run++;
+                        groupLen--;
+                        group <<= 1;
+                    }
+                    if (inEnd - inPos < run) {
+                        throw new EOFException("Expected byte in chunk");
+                    }
+                    token = ((long)inPos << 16) | run;
+                    inPos += run;
+                    outPos += run;
+                } else {
+                    if (inEnd - inPos < 2) {
+                        throw new EOFException("Expected byte " + (inEnd - inPos + 1) + " of chunk header");
+                    }
+                    final int byte1 = src[inPos++] & 0xff;
+                    final int dist = (((byte1 & 0xf) << 8) | (src[inPos++] & 0xff)) + 1;
+                    final int copyLen;
+                    if ((byte1 >> 4) == 0) {
+                        if (inPos >= inEnd) {
+                            throw new EOFException("Expected byte 3 of chunk header");
+                        }
+                        copyLen = (src[inPos++] & 0xff) + 0x12;
+                    } else {
+                        copyLen = (byte1 >> 4) + 2;
+                    }
+                    if (outPos - dist < 0) {
+                        throw new IOException("Illegal copyOffset: " + (outPos - dist) + " < 0");
+                    }
+                    if (outPos + copyLen > outEnd) {
+                        throw new IOException("Illegal copyLen: " + outPos + " + " + copyLen + " > " + outEnd);
+                    }
+                    token = MATCH_FLAG | ((long)dist << 16) | copyLen;
+                    outPos += copyLen;
+                    groupLen--;
+                    group <<= 1;
+                }
+                if (!queue.offer(token)) return;
+                if (++pending == FLUSH_INTERVAL) {
+                    queue.flush();
+                    pending = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Consumer stage, run on the calling thread.
+     */
+    private static void materialize(byte[] src, byte[] dst, SpscLongQueue queue) {
+        int outPos = 0;
+        int available;
+        while ((available = queue.await()) > 0) {
+            for (int i = 0; i < available; i++) {
+                final long token = queue.get(i);
+                final int len = (int)token & 0xffff;
+                if (token >= 0) {
+                    System.arraycopy(src, (int)(token >>> 16), dst, outPos, len);
+                } else {
+                    Yaz0Decoder.copyWithin(dst, outPos - ((int)(token >>> 16) & 0xffff), outPos, len);
+                }
+                outPos += len;
+            }
+            queue.advance(available);
+        }
+    }
+}
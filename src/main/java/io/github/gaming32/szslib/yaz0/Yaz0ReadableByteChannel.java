@@ -0,0 +1,110 @@
+package io.github.gaming32.szslib.yaz0;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ScatteringByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * Channel counterpart of {@link Yaz0StreamingInputStream}. Decoded data is put into the destination buffers, heap or
+ * direct, straight from the 4 KiB window, so memory use is constant and no intermediate arrays are involved.
+ */
+public class Yaz0ReadableByteChannel implements ScatteringByteChannel {
+    private final ReadableByteChannel delegate;
+    private final Yaz0Window window;
+
+    private Yaz0ReadableByteChannel(ReadableByteChannel delegate) throws IOException {
+        this.delegate = delegate;
+        final InputStream input = Channels.newInputStream(delegate);
+        window = new Yaz0Window(input, Yaz0Decoder.readHeader(input));
+    }
+
+    /**
+     * Opens the Yaz0 file starting at {@code delegate}'s current position.
+     */
+    public static Yaz0ReadableByteChannel open(ReadableByteChannel delegate) throws IOException {
+        try {
+            return new Yaz0ReadableByteChannel(delegate);
+        } catch (IOException e) {
+            delegate.close();
+            throw e;
+        }
+    }
+
+    public static Yaz0ReadableByteChannel open(Path path) throws IOException {
+        return open(Files.newByteChannel(path, StandardOpenOption.READ));
+    }
+
+    public ReadableByteChannel getDelegate() {
+        return delegate;
+    }
+
+    public int getUncompressedSize() {
+        return window.getUncompressedSize();
+    }
+
+    private void checkClosed() throws ClosedChannelException {
+        if (!isOpen()) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    /**
+     * Fills {@code dst} as far as the data allows.
+     * @throws java.io.EOFException If the compressed data ends before all of the output has been read
+     */
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        checkClosed();
+        if (!dst.hasRemaining()) {
+            return 0;
+        }
+        int read = 0;
+        while (dst.hasRemaining() && window.fill()) {
+            final int count = Math.min(dst.remaining(), window.available());
+            dst.put(window.buffer, window.readPtr, count);
+            window.readPtr += count;
+            read += count;
+        }
+        return read == 0 ? -1 : read;
+    }
+
+    @Override
+    public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+        Objects.checkFromIndexSize(offset, length, dsts.length);
+        checkClosed();
+        long read = 0;
+        for (int i = offset; i < offset + length; i++) {
+            final ByteBuffer dst = dsts[i];
+            if (!dst.hasRemaining()) continue;
+            final int count = read(dst);
+            if (count < 0) {
+                return read == 0 ? -1 : read;
+            }
+            read += count;
+        }
+        return read;
+    }
+
+    @Override
+    public long read(ByteBuffer[] dsts) throws IOException {
+        return read(dsts, 0, dsts.length);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return delegate.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
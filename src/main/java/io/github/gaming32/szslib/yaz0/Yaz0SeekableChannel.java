@@ -0,0 +1,167 @@
+package io.github.gaming32.szslib.yaz0;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A read-only view of the decompressed contents of a Yaz0 file. Reads resume from the nearest {@link Yaz0Index}
+ * checkpoint before the requested position, so at most one checkpoint interval has to be decoded to reach any byte.
+ * Like {@link Yaz0StreamingInputStream}, only the 4 KiB window and one output chunk are kept in memory.
+ *
+ * @apiNote Thread-safety: {@link Yaz0SeekableChannel} is not thread-safe.
+ */
+public class Yaz0SeekableChannel implements SeekableByteChannel {
+    private final SeekableByteChannel compressed;
+    private final Yaz0Index index;
+    private final Yaz0Window window;
+    private long position;
+
+    private Yaz0SeekableChannel(SeekableByteChannel compressed, Yaz0Index index) throws IOException {
+        this.compressed = compressed;
+        this.index = index;
+        index.check(compressed);
+        compressed.position(0);
+        final int uncompressedSize = Yaz0Decoder.readHeader(Channels.newInputStream(compressed));
+        if (uncompressedSize != index.getUncompressedSize()) {
+            throw new IOException(
+                "Yaz0 index doesn't match: uncompressed size " + index.getUncompressedSize() + " != " + uncompressedSize
+            );
+        }
+        window = new Yaz0Window(Channels.newInputStream(compressed), uncompressedSize);
+    }
+
+    /**
+     * Opens {@code compressed} using an existing index. The channel is expected to start with the Yaz0 header.
+     */
+    public static Yaz0SeekableChannel open(SeekableByteChannel compressed, Yaz0Index index) throws IOException {
+        try {
+            return new Yaz0SeekableChannel(compressed, index);
+        } catch (IOException e) {
+            compressed.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens {@code compressed}, building an index with checkpoints every {@code interval} bytes of output first.
+     */
+    public static Yaz0SeekableChannel open(SeekableByteChannel compressed, int interval) throws IOException {
+        final Yaz0Index index;
+        try {
+            index = Yaz0Index.build(compressed, interval);
+        } catch (IOException e) {
+            compressed.close();
+            throw e;
+        }
+        return open(compressed, index);
+    }
+
+    public static Yaz0SeekableChannel open(SeekableByteChannel compressed) throws IOException {
+        return open(compressed, Yaz0Index.DEFAULT_INTERVAL);
+    }
+
+    public static Yaz0SeekableChannel open(Path path) throws IOException {
+        return open(Files.newByteChannel(path, StandardOpenOption.READ));
+    }
+
+    public static Yaz0SeekableChannel open(Path path, Yaz0Index index) throws IOException {
+        return open(Files.newByteChannel(path, StandardOpenOption.READ), index);
+    }
+
+    public Yaz0Index getIndex() {
+        return index;
+    }
+
+    private void checkClosed() throws ClosedChannelException {
+        if (!isOpen()) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    /**
+     * Gets the window to {@link #position}, either by moving within it, decoding forward, or restarting from a
+     * checkpoint.
+     */
+    private void seekWindow() throws IOException {
+        if (window.getReadPosition() == position) return;
+        if (window.contains(position)) {
+            window.setReadPosition(position);
+            return;
+        }
+        final Yaz0Index.Checkpoint checkpoint = index.find(position);
+        final long current = window.getReadPosition();
+        if (current > position || checkpoint.outputOffset() > current) {
+            compressed.position(checkpoint.inputOffset());
+            window.reset(checkpoint, window.getInput());
+        }
+        window.skipTo(position);
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        checkClosed();
+        if (position >= index.getUncompressedSize()) {
+            return -1;
+        }
+        seekWindow();
+        if (!window.fill()) {
+            return -1;
+        }
+        final int read = Math.min(dst.remaining(), window.available());
+        dst.put(window.buffer, window.readPtr, read);
+        window.readPtr += read;
+        position += read;
+        return read;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws ClosedChannelException {
+        checkClosed();
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long position() throws ClosedChannelException {
+        checkClosed();
+        return position;
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) throws ClosedChannelException {
+        checkClosed();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("newPosition < 0");
+        }
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws ClosedChannelException {
+        checkClosed();
+        return index.getUncompressedSize();
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) throws ClosedChannelException {
+        checkClosed();
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return compressed.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        compressed.close();
+    }
+}
@@ -0,0 +1,111 @@
+package io.github.gaming32.szslib.yaz0;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * A Yaz0 decoding stream that only keeps the 4 KiB back-reference window in memory, rather than the whole output
+ * like {@link Yaz0InputStream}. Memory use is constant no matter how large the output is.
+ */
+public class Yaz0StreamingInputStream extends InputStream {
+    private final InputStream delegate;
+    private final Yaz0Window window;
+
+    public Yaz0StreamingInputStream(InputStream delegate) throws IOException {
+        this.delegate = delegate;
+        try {
+            window = new Yaz0Window(delegate, Yaz0Decoder.readHeader(delegate));
+        } catch (IOException e) {
+            delegate.close();
+            throw e;
+        }
+    }
+
+    public Yaz0StreamingInputStream(Path path) throws IOException {
+        this(Files.newInputStream(path));
+    }
+
+    public Yaz0StreamingInputStream(File file) throws IOException {
+        this(new FileInputStream(file));
+    }
+
+    public InputStream getDelegate() {
+        return delegate;
+    }
+
+    public int getUncompressedSize() {
+        return window.getUncompressedSize();
+    }
+
+    @Override
+    public int available() {
+        return window.available();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!window.fill()) {
+            return -1;
+        }
+        return window.buffer[window.readPtr++] & 0xff;
+    }
+
+    @Override
+    @SuppressWarnings("NullableProblems")
+    public int read(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        if (len == 0) {
+            return 0;
+        }
+        if (!window.fill()) {
+            return -1;
+        }
+        len = Math.min(len, window.available());
+        System.arraycopy(window.buffer, window.readPtr, b, off, len);
+        window.readPtr += len;
+        return len;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        return window.skip(n);
+    }
+
+    @Override
+    public long transferTo(OutputStream out) throws IOException {
+        long transferred = 0;
+        while (window.fill()) {
+            final int len = window.available();
+            out.write(window.buffer, window.readPtr, len);
+            window.readPtr += len;
+            transferred += len;
+        }
+        return transferred;
+    }
+
+    public long transferTo(WritableByteChannel out) throws IOException {
+        long transferred = 0;
+        while (window.fill()) {
+            final int len = window.available();
+            final ByteBuffer chunk = ByteBuffer.wrap(window.buffer, window.readPtr, len);
+            while (chunk.hasRemaining()) {
+                out.write(chunk);
+            }
+            window.readPtr += len;
+            transferred += len;
+        }
+        return transferred;
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
@@ -0,0 +1,188 @@
+package io.github.gaming32.szslib.yaz0;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Sliding-window Yaz0 decode state shared by the constant-memory readers. Only the last 4 KiB of output plus one
+ * output chunk are kept; once the chunk has been read, the window slides back to the front of the buffer.
+ */
+final class Yaz0Window {
+    private static final int OUTPUT_CHUNK = 0x8000;
+    private static final int SLIDE_AT = Yaz0Encoder.WINDOW_SIZE + OUTPUT_CHUNK;
+
+    final byte[] buffer = new byte[SLIDE_AT + Yaz0Encoder.MAX_MATCH];
+    private final byte[] inBuffer = new byte[8192];
+    private final int uncompressedSize;
+
+    private InputStream input;
+    private Yaz0Decoder decoder;
+    private int inEnd;
+    private boolean inEof;
+    private long inBase;
+    private int windowStart;
+    int readPtr;
+
+    /**
+     * @param input The compressed data, positioned just past the header
+     */
+    Yaz0Window(InputStream input, int uncompressedSize) {
+        this.input = input;
+        this.uncompressedSize = uncompressedSize;
+        decoder = new Yaz0Decoder(0, 0);
+        inBase = Yaz0Encoder.HEADER_SIZE;
+    }
+
+    InputStream getInput() {
+        return input;
+    }
+
+    int getUncompressedSize() {
+        return uncompressedSize;
+    }
+
+    /**
+     * @return How much decoded output can be read from {@link #buffer} at {@link #readPtr}
+     */
+    int available() {
+        return decoder.outPos - readPtr;
+    }
+
+    /**
+     * @return The output offset of the next byte to be read
+     */
+    long getReadPosition() {
+        return windowStart + readPtr;
+    }
+
+    /**
+     * @return Whether {@code position} is still held in the window, so that it can be read without decoding again
+     */
+    boolean contains(long position) {
+        return position >= windowStart && position <= windowStart + decoder.outPos;
+    }
+
+    void setReadPosition(long position) {
+        if (!contains(position)) {
+            throw new IllegalArgumentException("Position " + position + " not in window");
+        }
+        readPtr = (int)(position - windowStart);
+    }
+
+    /**
+     * Decodes more output if everything decoded so far has been read.
+     * @return Whether there's anything left to read
+     * @throws EOFException If the compressed data ends before all of the output has been decoded
+     */
+    boolean fill() throws IOException {
+        return fill(uncompressedSize);
+    }
+
+    /**
+     * Like {@link #fill()}, but tries to stop decoding shortly past the output offset {@code limit}.
+     */
+    private boolean fill(long limit) throws IOException {
+        while (readPtr >= decoder.outPos) {
+            final int produced = windowStart + decoder.outPos;
+            if (produced >= uncompressedSize) {
+                return false;
+            }
+            if (decoder.isInputEnded()) {
+                checkComplete(uncompressedSize);
+            }
+            if (decoder.outPos >= SLIDE_AT) {
+                slide();
+            }
+            if (!inEof && inEnd - decoder.inPos < Yaz0Decoder.MAX_CHUNK_INPUT) {
+                refill();
+            }
+            final int outEnd = (int)Math.min(buffer.length, (long)decoder.outPos + uncompressedSize - produced);
+            final int outLimit = (int)Math.max(Math.min(limit - windowStart, SLIDE_AT), decoder.outPos + 1);
+            decoder.decode(inBuffer, inEnd, inEof, buffer, 0, Math.min(outEnd, outLimit), outEnd);
+        }
+        return true;
+    }
+
+    /**
+     * Decodes and discards output until the read position reaches {@code target} or the data ends.
+     */
+    void skipTo(long target) throws IOException {
+        while (getReadPosition() < target) {
+            if (readPtr < decoder.outPos) {
+                readPtr = (int)Math.min(decoder.outPos, target - windowStart);
+            } else if (!fill(target)) {
+                break;
+            }
+        }
+    }
+
+    long skip(long n) throws IOException {
+        final long start = getReadPosition();
+        skipTo(Math.min(start + n, uncompressedSize));
+        return getReadPosition() - start;
+    }
+
+    /**
+     * Captures the decoder state at the end of the decoded output, which is always on a chunk boundary.
+     */
+    Yaz0Index.Checkpoint checkpoint() {
+        final int windowLen = Math.min(decoder.outPos, Yaz0Encoder.WINDOW_SIZE);
+        return new Yaz0Index.Checkpoint(
+            windowStart + decoder.outPos,
+            inBase + decoder.inPos,
+            decoder.getGroup(),
+            decoder.getGroupLen(),
+            Arrays.copyOfRange(buffer, decoder.outPos - windowLen, decoder.outPos)
+        );
+    }
+
+    /**
+     * Restarts decoding from {@code checkpoint}.
+     * @param input The compressed data, positioned at {@link Yaz0Index.Checkpoint#inputOffset}
+     */
+    void reset(Yaz0Index.Checkpoint checkpoint, InputStream input) {
+        final byte[] window = checkpoint.window();
+        System.arraycopy(window, 0, buffer, 0, window.length);
+        this.input = input;
+        decoder = new Yaz0Decoder(0, window.length, checkpoint.group(), checkpoint.groupLen());
+        inEnd = 0;
+        inEof = false;
+        inBase = checkpoint.inputOffset();
+        windowStart = checkpoint.outputOffset() - window.length;
+        readPtr = window.length;
+    }
+
+    /**
+     * Throws if decoding stopped before reaching the output offset {@code target}.
+     */
+    void checkComplete(long target) throws EOFException {
+        final int produced = windowStart + decoder.outPos;
+        if (produced < target) {
+            throw new EOFException("Yaz0 data ended after " + produced + " of " + uncompressedSize + " bytes");
+        }
+    }
+
+    private void slide() {
+        final int shift = decoder.outPos - Yaz0Encoder.WINDOW_SIZE;
+        System.arraycopy(buffer, shift, buffer, 0, Yaz0Encoder.WINDOW_SIZE);
+        decoder.outPos -= shift;
+        readPtr -= shift;
+        windowStart += shift;
+    }
+
+    private void refill() throws IOException {
+        final int remaining = inEnd - decoder.inPos;
+        System.arraycopy(inBuffer, decoder.inPos, inBuffer, 0, remaining);
+        inBase += decoder.inPos;
+        decoder.inPos = 0;
+        inEnd = remaining;
+        final int read = input.read(inBuffer, inEnd, inBuffer.length - inEnd);
+        if (read < 0) {
+            inEof = true;
+        } else {
+            inEnd += read;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+import io.github.gaming32.szslib.sarc.SARCFile;
+import io.github.gaming32.szslib.sarc.SARCWriter;
+import io.github.gaming32.szslib.u8.U8File;
+import io.github.gaming32.szslib.yaz0.Yaz0InputStream;
+import io.github.gaming32.szslib.yaz0.Yaz0OutputStream;
+import io.github.gaming32.szslib.yaz0.Yaz0StreamingInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileVisitResult;
+import java.util.Arrays;
+
+public class TestSARCStreamReader {
+    public static void main(String[] args) throws IOException {
+        // There's no SARC resource, so build one from the U8 archive
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        //noinspection DataFlowIssue
+        try (
+            InputStream is = new Yaz0InputStream(TestSARCStreamReader.class.getResourceAsStream("/Common.szs"));
+            U8File source = U8File.fromInputStream(is);
+            Yaz0OutputStream out = new Yaz0OutputStream(compressed)
+        ) {
+            new SARCWriter().setAlignment(0x80).addAll("", source.getRoot()).write(out);
+        }
+
+        final SARCFile expected;
+        try (InputStream is = new Yaz0InputStream(new ByteArrayInputStream(compressed.toByteArray()))) {
+            expected = SARCFile.read(is);
+        }
+
+        final int[] visited = {0, -1};
+        try (InputStream is = new Yaz0StreamingInputStream(new ByteArrayInputStream(compressed.toByteArray()))) {
+            SARCFile.stream(is, (entry, data) -> {
+                if (entry.dataOffset() < visited[1]) {
+                    throw new IllegalStateException("Out of data order: " + entry.name());
+                }
+                visited[1] = entry.dataOffset();
+                final SARCFile.Entry stored = expected.getEntryByHash(entry.hash());
+                if (stored == null || !stored.getName().equals(entry.name())) {
+                    throw new IllegalStateException("Unknown entry: " + entry.name());
+                }
+                // Leave some entries partly unread, which should be skipped
+                final int length = visited[0] % 2 == 0 ? entry.size() : entry.size() / 2;
+                try (InputStream original = stored.openInputStream()) {
+                    if (!Arrays.equals(original.readNBytes(length), data.readNBytes(length))) {
+                        throw new IllegalStateException("Content differs for " + entry.name());
+                    }
+                }
+                visited[0]++;
+                return FileVisitResult.CONTINUE;
+            });
+        }
+        if (visited[0] != expected.getEntryCount()) {
+            throw new IllegalStateException("Streamed " + visited[0] + " of " + expected.getEntryCount() + " entries");
+        }
+        System.out.println("Streamed " + visited[0] + " files");
+
+        final int[] count = {0};
+        try (InputStream is = new Yaz0StreamingInputStream(new ByteArrayInputStream(compressed.toByteArray()))) {
+            final boolean completed = SARCFile.stream(is, (entry, data) ->
+                ++count[0] == 3 ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE
+            );
+            if (completed || count[0] != 3) {
+                throw new IllegalStateException("Early termination failed");
+            }
+        }
+
+        // Deduplicated entries share data, which has to be replayed to each of them
+        final ByteArrayOutputStream deduplicated = new ByteArrayOutputStream();
+        new SARCWriter().setDeduplicate(true)
+            .addAll("a", expected.getRoot())
+            .addAll("b", expected.getRoot())
+            .write(deduplicated);
+        final int[] shared = {0};
+        SARCFile.stream(new ByteArrayInputStream(deduplicated.toByteArray()), (entry, data) -> {
+            final SARCFile.Entry stored = expected.getEntry(entry.name().substring(2));
+            // Leave some partly unread, which should still be replayed in full to the others
+            final int length = shared[0] % 3 == 0 ? entry.size() / 2 : entry.size();
+            try (InputStream original = stored.openInputStream()) {
+                if (!Arrays.equals(original.readNBytes(length), data.readNBytes(length))) {
+                    throw new IllegalStateException("Shared content differs for " + entry.name());
+                }
+            }
+            shared[0]++;
+            return FileVisitResult.CONTINUE;
+        });
+        if (shared[0] != expected.getEntryCount() * 2) {
+            throw new IllegalStateException("Streamed " + shared[0] + " deduplicated entries");
+        }
+        System.out.println("Streamed " + shared[0] + " deduplicated entries");
+        expected.close();
+    }
+}
@@ -0,0 +1,115 @@
+import io.github.gaming32.szslib.decompressed.DecompressedSzsFile;
+import io.github.gaming32.szslib.sarc.SARCFile;
+import io.github.gaming32.szslib.sarc.SARCWriter;
+import io.github.gaming32.szslib.u8.U8File;
+import io.github.gaming32.szslib.yaz0.Yaz0Decoder;
+import io.github.gaming32.szslib.yaz0.Yaz0InputStream;
+import io.github.gaming32.szslib.yaz0.Yaz0OutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+public class TestSARCWriter {
+    public static void main(String[] args) throws IOException {
+        final byte[] original;
+        //noinspection DataFlowIssue
+        try (InputStream is = new Yaz0InputStream(TestSARCWriter.class.getResourceAsStream("/Common.szs"))) {
+            original = is.readAllBytes();
+        }
+
+        for (final ByteOrder order : new ByteOrder[] {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (U8File source = U8File.fromByteArray(original)) {
+                final SARCWriter writer = new SARCWriter()
+                    .setByteOrder(order)
+                    .setAlignment("brres", 0x80)
+                    .addAll("", source.getRoot());
+                try (Yaz0OutputStream out = new Yaz0OutputStream(compressed)) {
+                    System.out.println("Wrote " + writer.write(out) + " bytes " + order);
+                }
+            }
+
+            final ByteBuffer written = ByteBuffer.wrap(Yaz0Decoder.decode(compressed.toByteArray())).order(order);
+            if (written.getInt(0x0C) % 0x80 != 0) {
+                throw new IllegalStateException("Data section isn't aligned: 0x" + Integer.toHexString(written.getInt(0x0C)));
+            }
+            try (U8File expected = U8File.fromByteArray(original); SARCFile actual = SARCFile.open(written)) {
+                compare(expected.getRoot(), actual.getRoot());
+                for (final String name : actual.listFiles()) {
+                    final SARCFile.Entry entry = actual.getEntry(name);
+                    if (entry == null || !name.equals(entry.getName())) {
+                        throw new IllegalStateException("Lookup failed for " + name);
+                    }
+                }
+            }
+        }
+        System.out.println("Round trip OK");
+
+        final Path temp = Files.createTempFile("TestSARCWriter", ".sarc");
+        try {
+            try (U8File source = U8File.fromByteArray(original)) {
+                new SARCWriter().setHashKey(0x83).addAll("nested", source.getRoot()).write(temp);
+            }
+            try (SARCFile first = SARCFile.open(temp)) {
+                if (first.getHashKey() != 0x83) {
+                    throw new IllegalStateException("Hash key not written");
+                }
+                // Rewrite from the archive itself, which should give the same bytes
+                final ByteArrayOutputStream rewritten = new ByteArrayOutputStream();
+                new SARCWriter().setHashKey(0x83).addAll("", first.getRoot()).write(rewritten);
+                if (!Arrays.equals(Files.readAllBytes(temp), rewritten.toByteArray())) {
+                    throw new IllegalStateException("Rewrite differs from original");
+                }
+            }
+        } finally {
+            Files.delete(temp);
+        }
+        System.out.println("Rewrite OK");
+
+        try (U8File source = U8File.fromByteArray(original)) {
+            final SARCWriter writer = new SARCWriter().setDeduplicate(true)
+                .setAlignment("brres", 0x80)
+                .addAll("a", source.getRoot())
+                .addAll("b", source.getRoot());
+            final ByteArrayOutputStream deduplicated = new ByteArrayOutputStream();
+            final long size = writer.write(deduplicated);
+            try (SARCFile actual = SARCFile.open(ByteBuffer.wrap(deduplicated.toByteArray()))) {
+                compare(source.getRoot(), (DecompressedSzsFile.DirectoryNode)actual.getNode("a"));
+                compare(source.getRoot(), (DecompressedSzsFile.DirectoryNode)actual.getNode("b"));
+            }
+            final long single = new SARCWriter().addAll("a", source.getRoot()).write(OutputStream.nullOutputStream());
+            if (writer.getBytesSaved() < single / 2 || size > single + 0x10000) {
+                throw new IllegalStateException("Duplicates weren't merged: " + size + " bytes, " + writer.getBytesSaved() + " saved");
+            }
+            System.out.println("Deduplicated OK: " + size + " bytes, " + writer.getBytesSaved() + " saved");
+        }
+    }
+
+    private static void compare(DecompressedSzsFile.DirectoryNode expected, DecompressedSzsFile.DirectoryNode actual) throws IOException {
+        for (final DecompressedSzsFile.TreeNode child : expected.getChildren().values()) {
+            final DecompressedSzsFile.TreeNode other = actual.getChild(child.getName());
+            if (child instanceof DecompressedSzsFile.DirectoryNode dir) {
+                // SARC has no directory entries, so empty directories aren't kept
+                if (other != null || !dir.getChildren().isEmpty()) {
+                    compare(dir, (DecompressedSzsFile.DirectoryNode)other);
+                }
+            } else if (child instanceof DecompressedSzsFile.FileNode file) {
+                if (!(other instanceof DecompressedSzsFile.FileNode otherFile)) {
+                    throw new IllegalStateException("Missing " + child.getFullPath());
+                }
+                try (InputStream a = file.openInputStream(); InputStream b = otherFile.openInputStream()) {
+                    if (!Arrays.equals(a.readAllBytes(), b.readAllBytes())) {
+                        throw new IllegalStateException("Content differs for " + child.getFullPath());
+                    }
+                }
+            }
+        }
+    }
+}
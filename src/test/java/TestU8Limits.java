@@ -0,0 +1,77 @@
+import io.github.gaming32.szslib.u8.U8File;
+import io.github.gaming32.szslib.u8.U8Limits;
+import io.github.gaming32.szslib.u8.U8StreamReader;
+import io.github.gaming32.szslib.u8.U8Writer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.FileVisitResult;
+
+public class TestU8Limits {
+    public static void main(String[] args) throws IOException {
+        // Header claiming a 2 GiB tree with 2^31 - 1 nodes, backed by only one node
+        final ByteBuffer huge = ByteBuffer.allocate(0x2c)
+            .putInt(0x55aa382d).putInt(0x20).putInt(Integer.MAX_VALUE).putInt(0)
+            .position(0x20)
+            .putInt(0x01000000).putInt(0).putInt(Integer.MAX_VALUE)
+            .flip();
+        expectRejected("huge tree", () -> U8File.fromByteBuffer(huge));
+        expectRejected("huge tree (stream)", () -> U8StreamReader.read(
+            new ByteArrayInputStream(huge.array()), (entry, data) -> FileVisitResult.CONTINUE, U8Limits.UNTRUSTED
+        ));
+        // Even without limits, a tree that's mostly string pool is rejected before it's allocated
+        final ByteBuffer hugePool = ByteBuffer.wrap(huge.array().clone()).putInt(0x28, 1);
+        expectRejected("huge string pool (stream)", () -> U8StreamReader.read(
+            new ByteArrayInputStream(hugePool.array()), (entry, data) -> FileVisitResult.CONTINUE
+        ));
+
+        final StringBuilder deepPath = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            deepPath.append("d/");
+        }
+        final byte[] deep = write(new U8Writer().addFile(deepPath + "file", new byte[1]));
+        U8File.fromByteArray(deep).close();
+        expectRejected("deep nesting", () -> U8File.fromByteBuffer(ByteBuffer.wrap(deep), U8Limits.UNTRUSTED));
+
+        final U8Writer many = new U8Writer();
+        for (int i = 0; i < 100; i++) {
+            many.addFile("file" + i, new byte[1000]);
+        }
+        final byte[] manyBytes = write(many);
+        expectRejected("node count", () -> U8File.fromByteBuffer(
+            ByteBuffer.wrap(manyBytes), U8Limits.UNTRUSTED.withMaxNodes(50)
+        ));
+        expectRejected("data size", () -> U8File.fromByteBuffer(
+            ByteBuffer.wrap(manyBytes), U8Limits.UNTRUSTED.withMaxDataSize(50_000)
+        ));
+        expectRejected("string pool", () -> U8File.fromByteBuffer(
+            ByteBuffer.wrap(manyBytes), U8Limits.UNTRUSTED.withMaxStringPoolSize(100)
+        ));
+        expectRejected("truncated data", () -> U8File.fromByteBuffer(ByteBuffer.wrap(manyBytes, 0, manyBytes.length - 1)));
+        U8File.fromByteBuffer(ByteBuffer.wrap(manyBytes), U8Limits.UNTRUSTED).close();
+        System.out.println("All limits enforced");
+    }
+
+    private static byte[] write(U8Writer writer) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.write(out);
+        return out.toByteArray();
+    }
+
+    private static void expectRejected(String what, IOAction action) {
+        try {
+            action.run();
+        } catch (IOException e) {
+            System.out.println(what + ": " + e.getMessage());
+            return;
+        }
+        throw new IllegalStateException("Accepted archive exceeding limits: " + what);
+    }
+
+    @FunctionalInterface
+    private interface IOAction {
+        void run() throws IOException;
+    }
+}
@@ -0,0 +1,78 @@
+import io.github.gaming32.szslib.u8.U8File;
+import io.github.gaming32.szslib.u8.U8StreamReader;
+import io.github.gaming32.szslib.u8.U8Writer;
+import io.github.gaming32.szslib.yaz0.Yaz0InputStream;
+import io.github.gaming32.szslib.yaz0.Yaz0StreamingInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileVisitResult;
+import java.util.Arrays;
+
+public class TestU8StreamReader {
+    public static void main(String[] args) throws IOException {
+        final U8File expected;
+        //noinspection DataFlowIssue
+        try (InputStream is = new Yaz0InputStream(TestU8StreamReader.class.getResourceAsStream("/Common.szs"))) {
+            expected = U8File.fromInputStream(is);
+        }
+
+        final int[] visited = {0, -1};
+        //noinspection DataFlowIssue
+        try (InputStream is = new Yaz0StreamingInputStream(TestU8StreamReader.class.getResourceAsStream("/Common.szs"))) {
+            U8StreamReader.read(is, (entry, data) -> {
+                if (entry.dataOffset() < visited[1]) {
+                    throw new IllegalStateException("Out of data order: " + entry.path());
+                }
+                visited[1] = entry.dataOffset();
+                final U8File.FileNode node = (U8File.FileNode)expected.getNode(entry.path());
+                try (InputStream original = node.openInputStream()) {
+                    if (!Arrays.equals(original.readAllBytes(), data.readAllBytes())) {
+                        throw new IllegalStateException("Content differs for " + entry.path());
+                    }
+                }
+                visited[0]++;
+                return FileVisitResult.CONTINUE;
+            });
+        }
+        System.out.println("Streamed " + visited[0] + " files");
+
+        final int[] count = {0};
+        //noinspection DataFlowIssue
+        try (InputStream is = new Yaz0StreamingInputStream(TestU8StreamReader.class.getResourceAsStream("/Common.szs"))) {
+            final boolean completed = U8StreamReader.read(is, (entry, data) ->
+                ++count[0] == 3 ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE
+            );
+            if (completed || count[0] != 3) {
+                throw new IllegalStateException("Early termination failed");
+            }
+        }
+
+        // Deduplicated files share data, which has to be replayed to each of them
+        final ByteArrayOutputStream deduplicated = new ByteArrayOutputStream();
+        new U8Writer().setDeduplicate(true)
+            .addAll("a", expected.getRoot())
+            .addAll("b", expected.getRoot())
+            .write(deduplicated);
+        final int[] shared = {0};
+        U8StreamReader.read(new ByteArrayInputStream(deduplicated.toByteArray()), (entry, data) -> {
+            final U8File.FileNode node = (U8File.FileNode)expected.getNode(entry.path().substring(2));
+            // Leave some partly unread, which should still be replayed in full to the others
+            final int length = shared[0] % 3 == 0 ? entry.size() / 2 : entry.size();
+            try (InputStream original = node.openInputStream()) {
+                if (!Arrays.equals(original.readNBytes(length), data.readNBytes(length))) {
+                    throw new IllegalStateException("Shared content differs for " + entry.path());
+                }
+            }
+            shared[0]++;
+            return FileVisitResult.CONTINUE;
+        });
+        if (shared[0] != visited[0] * 2) {
+            throw new IllegalStateException("Streamed " + shared[0] + " deduplicated files");
+        }
+        System.out.println("Streamed " + shared[0] + " deduplicated files");
+        expected.close();
+    }
+}
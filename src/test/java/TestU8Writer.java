@@ -0,0 +1,132 @@
+import io.github.gaming32.szslib.decompressed.DecompressedSzsFile;
+import io.github.gaming32.szslib.u8.U8File;
+import io.github.gaming32.szslib.u8.U8Writer;
+import io.github.gaming32.szslib.yaz0.Yaz0InputStream;
+import io.github.gaming32.szslib.yaz0.Yaz0OutputStream;
+import io.github.gaming32.szslib.yaz0.Yaz0ReadableByteChannel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+
+public class TestU8Writer {
+    public static void main(String[] args) throws IOException {
+        final byte[] original;
+        //noinspection DataFlowIssue
+        try (InputStream is = new Yaz0InputStream(TestU8Writer.class.getResourceAsStream("/Common.szs"))) {
+            original = is.readAllBytes();
+        }
+
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (U8File source = U8File.fromByteArray(original)) {
+            final U8Writer writer = new U8Writer().addAll("", source.getRoot());
+            try (Yaz0OutputStream out = new Yaz0OutputStream(compressed)) {
+                System.out.println("Wrote " + writer.write(out) + " bytes");
+            }
+        }
+
+        final U8File.DirectoryNode closedRoot;
+        try (
+            U8File expected = U8File.fromByteArray(original);
+            U8File actual = U8File.fromChannel(Yaz0ReadableByteChannel.open(
+                Channels.newChannel(new ByteArrayInputStream(compressed.toByteArray()))
+            ))
+        ) {
+            compare(expected.getRoot(), actual.getRoot());
+            closedRoot = actual.getRoot();
+        }
+        System.out.println("Round trip OK");
+
+        // Nodes obtained before closing stay usable, but the archive itself doesn't
+        try (U8File expected = U8File.fromByteArray(original)) {
+            if (!expected.getRoot().getChildren().keySet().equals(closedRoot.getChildren().keySet())) {
+                throw new IllegalStateException("Children of a closed archive's root differ");
+            }
+            for (final U8File.TreeNode child : closedRoot.getChildren().values()) {
+                if (child.getParent() != closedRoot || !child.getFullPath().endsWith('/' + child.getName())) {
+                    throw new IllegalStateException("Closed archive's tree is broken at " + child);
+                }
+            }
+        }
+        try {
+            closedRoot.getFile().getRoot();
+            throw new IllegalStateException("Closed archive still usable");
+        } catch (IllegalStateException e) {
+            if (!e.getMessage().equals("U8File closed")) {
+                throw e;
+            }
+        }
+
+        final Path temp = Files.createTempFile("TestU8Writer", ".arc");
+        try {
+            try (U8File source = U8File.fromByteArray(original)) {
+                new U8Writer().addAll("", source.getRoot()).write(temp);
+            }
+            try (U8File expected = U8File.fromByteArray(original); U8File mapped = U8File.fromMapped(temp)) {
+                compare(expected.getRoot(), mapped.getRoot());
+                mapped.walk(new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult visitFile(U8File.TreeNode file, BasicFileAttributes attrs) throws IOException {
+                        final ByteBuffer slice = ((U8File.FileNode)file).asByteBuffer();
+                        final ByteBuffer copy = ((U8File.FileNode)expected.getNode(file.getFullPath())).asByteBuffer();
+                        if (!slice.isReadOnly() || !slice.isDirect() || slice.compareTo(copy) != 0) {
+                            throw new IllegalStateException("Mapped slice mismatch for " + file.getFullPath());
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            }
+        } finally {
+            Files.delete(temp);
+        }
+        System.out.println("Mapped OK");
+
+        try (U8File source = U8File.fromByteArray(original)) {
+            final U8Writer writer = new U8Writer().setDeduplicate(true)
+                .addAll("a", source.getRoot())
+                .addAll("b", source.getRoot());
+            final ByteArrayOutputStream deduplicated = new ByteArrayOutputStream();
+            final long size = writer.write(deduplicated);
+            try (U8File actual = U8File.fromByteArray(deduplicated.toByteArray())) {
+                compare(source.getRoot(), (DecompressedSzsFile.DirectoryNode)actual.getNode("a"));
+                compare(source.getRoot(), (DecompressedSzsFile.DirectoryNode)actual.getNode("b"));
+            }
+            final long single = new U8Writer().addAll("a", source.getRoot()).write(OutputStream.nullOutputStream());
+            if (writer.getBytesSaved() < single / 2 || size > single + 0x10000) {
+                throw new IllegalStateException("Duplicates weren't merged: " + size + " bytes, " + writer.getBytesSaved() + " saved");
+            }
+            System.out.println("Deduplicated OK: " + size + " bytes, " + writer.getBytesSaved() + " saved");
+        }
+    }
+
+    private static void compare(DecompressedSzsFile.DirectoryNode expected, DecompressedSzsFile.DirectoryNode actual) throws IOException {
+        if (!expected.getChildren().keySet().equals(actual.getChildren().keySet())) {
+            throw new IllegalStateException("Children differ in " + expected.getFullPath());
+        }
+        for (final DecompressedSzsFile.TreeNode child : expected.getChildren().values()) {
+            final DecompressedSzsFile.TreeNode other = actual.getChild(child.getName());
+            if (child instanceof DecompressedSzsFile.DirectoryNode dir) {
+                compare(dir, (DecompressedSzsFile.DirectoryNode)other);
+            } else if (child instanceof DecompressedSzsFile.FileNode file) {
+                try (
+                    InputStream a = file.openInputStream();
+                    InputStream b = ((DecompressedSzsFile.FileNode)other).openInputStream()
+                ) {
+                    if (!Arrays.equals(a.readAllBytes(), b.readAllBytes())) {
+                        throw new IllegalStateException("Content differs for " + child.getFullPath());
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,229 @@
+import io.github.gaming32.szslib.yaz0.Yaz0;
+import io.github.gaming32.szslib.yaz0.Yaz0Decoder;
+import io.github.gaming32.szslib.yaz0.Yaz0Encoder;
+import io.github.gaming32.szslib.yaz0.Yaz0Index;
+import io.github.gaming32.szslib.yaz0.Yaz0InputStream;
+import io.github.gaming32.szslib.yaz0.Yaz0PipelinedDecoder;
+import io.github.gaming32.szslib.yaz0.Yaz0ReadableByteChannel;
+import io.github.gaming32.szslib.yaz0.Yaz0SeekableChannel;
+import io.github.gaming32.szslib.yaz0.Yaz0StreamingInputStream;
+import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+public class TestYaz0 {
+    private static final String[] RESOURCES = {"/Common.szs", "/HideAndSeekIcon.szs"};
+
+    public static void main(String[] args) throws IOException, URISyntaxException {
+        for (final String resource : RESOURCES) {
+            final byte[] original = decodeResource(resource);
+            checkDecoders(resource, original);
+
+            for (final Yaz0Encoder.Level level : Yaz0Encoder.Level.values()) {
+                checkEncoder(resource, original, level);
+            }
+        }
+    }
+
+    private static void checkEncoder(String resource, byte[] original, Yaz0Encoder.Level level) throws IOException {
+        final Yaz0Encoder encoder = new Yaz0Encoder(level);
+        byte[] encoded = null;
+        long time = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            final long start = System.nanoTime();
+            encoded = encoder.encode(original);
+            time = Math.min(time, System.nanoTime() - start);
+        }
+
+        final byte[] roundTripped;
+        try (InputStream is = new Yaz0InputStream(new ByteArrayInputStream(encoded))) {
+            roundTripped = is.readAllBytes();
+        }
+        if (!Arrays.equals(original, roundTripped)) {
+            throw new IllegalStateException("Round trip failed for " + resource + " at " + level);
+        }
+        if (!Arrays.equals(encoded, encoder.encodeParallel(original))) {
+            throw new IllegalStateException("Parallel encode differs from serial for " + resource + " at " + level);
+        }
+        System.out.printf(
+            "%s %s: %d -> %d bytes (%.1f%%) in %.1f ms (%.1f MB/s)%n",
+            resource, level, original.length, encoded.length, encoded.length * 100.0 / original.length,
+            time / 1e6, original.length / (time / 1e3)
+        );
+    }
+
+    private static void checkDecoders(String resource, byte[] expected) throws IOException, URISyntaxException {
+        final byte[] compressed;
+        //noinspection DataFlowIssue
+        try (InputStream is = TestYaz0.class.getResourceAsStream(resource)) {
+            compressed = is.readAllBytes();
+        }
+
+        if (!Arrays.equals(expected, Yaz0Decoder.decode(compressed))) {
+            throw new IllegalStateException("Array decode mismatch for " + resource);
+        }
+        if (!Arrays.equals(expected, Yaz0PipelinedDecoder.decode(compressed))) {
+            throw new IllegalStateException("Pipelined decode mismatch for " + resource);
+        }
+
+        final ByteBuffer directSrc = ByteBuffer.allocateDirect(compressed.length).put(compressed).flip();
+        final ByteBuffer directDst = ByteBuffer.allocateDirect(Yaz0Decoder.getUncompressedSize(directSrc));
+        Yaz0Decoder.decode(directSrc.position(Yaz0Encoder.HEADER_SIZE), directDst);
+        if (directDst.flip().compareTo(ByteBuffer.wrap(expected)) != 0) {
+            throw new IllegalStateException("Direct buffer decode mismatch for " + resource);
+        }
+
+        //noinspection DataFlowIssue
+        final Path path = Path.of(TestYaz0.class.getResource(resource).toURI());
+        final ByteBuffer mapped = Yaz0Decoder.decode(path, ByteBuffer::allocateDirect);
+        if (mapped.compareTo(ByteBuffer.wrap(expected)) != 0) {
+            throw new IllegalStateException("Mapped decode mismatch for " + resource);
+        }
+
+        try (Yaz0ReadableByteChannel channel = Yaz0ReadableByteChannel.open(Channels.newChannel(new ByteArrayInputStream(compressed)))) {
+            final ByteBuffer head = ByteBuffer.allocateDirect(0x1234);
+            final ByteBuffer tail = ByteBuffer.allocateDirect(channel.getUncompressedSize() - head.capacity());
+            if (channel.read(new ByteBuffer[] {head, tail}) != expected.length || channel.read(ByteBuffer.allocate(1)) != -1) {
+                throw new IllegalStateException("Scattering read length mismatch for " + resource);
+            }
+            if (head.flip().compareTo(ByteBuffer.wrap(expected, 0, 0x1234)) != 0 ||
+                tail.flip().compareTo(ByteBuffer.wrap(expected, 0x1234, tail.limit())) != 0) {
+                throw new IllegalStateException("Scattering read mismatch for " + resource);
+            }
+        }
+
+        checkSeekable(resource, compressed, expected);
+        checkTruncated(resource, compressed);
+
+        final ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        Yaz0.decode(new ByteArrayInputStream(compressed), streamed);
+        if (!Arrays.equals(expected, streamed.toByteArray())) {
+            throw new IllegalStateException("Streaming decode mismatch for " + resource);
+        }
+
+        try (InputStream is = new Yaz0StreamingInputStream(new ByteArrayInputStream(compressed))) {
+            final byte[] chunk = new byte[1000];
+            int total = 0;
+            int n;
+            while ((n = is.read(chunk)) != -1) {
+                if (!Arrays.equals(chunk, 0, n, expected, total, total + n)) {
+                    throw new IllegalStateException("Streaming read mismatch at " + total + " for " + resource);
+                }
+                total += n;
+            }
+            if (total != expected.length) {
+                throw new IllegalStateException("Streaming read ended early for " + resource);
+            }
+        }
+
+        try (InputStream is = new Yaz0InputStream(new ByteArrayInputStream(compressed))) {
+            for (int i = 0; i < expected.length; i++) {
+                if (is.read() != (expected[i] & 0xff)) {
+                    throw new IllegalStateException("Single byte read mismatch at " + i + " for " + resource);
+                }
+            }
+            if (is.read() != -1) {
+                throw new IllegalStateException("Expected EOF for " + resource);
+            }
+        }
+
+        // Data following the Yaz0 stream should still be readable from a stream that supports mark
+        final byte[] followed = Arrays.copyOf(compressed, compressed.length + 3);
+        followed[compressed.length] = 'E';
+        final ByteArrayInputStream delegate = new ByteArrayInputStream(followed);
+        try (InputStream is = new Yaz0InputStream(delegate)) {
+            is.readAllBytes();
+            if (delegate.read() != 'E' || delegate.available() != 2) {
+                throw new IllegalStateException("Read past the end of the Yaz0 data for " + resource);
+            }
+        }
+    }
+
+    private static void checkSeekable(String resource, byte[] compressed, byte[] expected) throws IOException {
+        final Yaz0Index built = Yaz0Index.build(new SeekableInMemoryByteChannel(compressed), 0x4000);
+        final ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+        built.write(indexBytes);
+        final Yaz0Index index = Yaz0Index.read(new ByteArrayInputStream(indexBytes.toByteArray()));
+
+        final Random random = new Random(resource.hashCode());
+        try (SeekableByteChannel channel = Yaz0SeekableChannel.open(new SeekableInMemoryByteChannel(compressed), index)) {
+            for (int i = 0; i < 200; i++) {
+                final int position = random.nextInt(expected.length);
+                final ByteBuffer dst = ByteBuffer.allocate(Math.min(random.nextInt(0x3000) + 1, expected.length - position));
+                channel.position(position);
+                while (dst.hasRemaining()) {
+                    if (channel.read(dst) < 0) {
+                        throw new IllegalStateException("Seekable read ended early at " + channel.position() + " for " + resource);
+                    }
+                }
+                if (dst.flip().compareTo(ByteBuffer.wrap(expected, position, dst.limit())) != 0) {
+                    throw new IllegalStateException("Seekable read mismatch at " + position + " for " + resource);
+                }
+            }
+        }
+
+        // An index for different data must be rejected
+        final byte[] modified = compressed.clone();
+        modified[0x10] ^= 1;
+        try {
+            Yaz0SeekableChannel.open(new SeekableInMemoryByteChannel(modified), index).close();
+            throw new IllegalStateException("Stale index accepted for " + resource);
+        } catch (IOException expectedFailure) {
+            // Expected
+        }
+
+        try (InputStream is = new Yaz0StreamingInputStream(new ByteArrayInputStream(compressed))) {
+            final int skip = expected.length / 3;
+            if (is.skip(skip) != skip || is.read() != (expected[skip] & 0xff)) {
+                throw new IllegalStateException("Streaming skip mismatch for " + resource);
+            }
+        }
+        try (InputStream is = new Yaz0InputStream(new ByteArrayInputStream(compressed))) {
+            final int skip = expected.length / 3;
+            if (is.skip(skip) != skip || is.read() != (expected[skip] & 0xff)) {
+                throw new IllegalStateException("Skip mismatch for " + resource);
+            }
+        }
+    }
+
+    private static void checkTruncated(String resource, byte[] compressed) throws IOException {
+        // Every cut in this range ends the data early, and many of them fall on a group boundary
+        for (int length = Yaz0Encoder.HEADER_SIZE + 1; length < Yaz0Encoder.HEADER_SIZE + 0x800; length++) {
+            try (InputStream is = new Yaz0StreamingInputStream(new ByteArrayInputStream(compressed, 0, length))) {
+                is.readAllBytes();
+                throw new IllegalStateException("Streaming read of " + length + " bytes didn't fail for " + resource);
+            } catch (EOFException expectedFailure) {
+                // Expected
+            }
+            try (Yaz0ReadableByteChannel channel = Yaz0ReadableByteChannel.open(
+                Channels.newChannel(new ByteArrayInputStream(compressed, 0, length))
+            )) {
+                final ByteBuffer dst = ByteBuffer.allocate(0x1000);
+                while (channel.read(dst.clear()) != -1) {
+                    // Keep reading
+                }
+                throw new IllegalStateException("Channel read of " + length + " bytes didn't fail for " + resource);
+            } catch (EOFException expectedFailure) {
+                // Expected
+            }
+        }
+    }
+
+    private static byte[] decodeResource(String resource) throws IOException {
+        //noinspection DataFlowIssue
+        try (InputStream is = new Yaz0InputStream(TestYaz0.class.getResourceAsStream(resource))) {
+            return is.readAllBytes();
+        }
+    }
+}